@@ -0,0 +1,227 @@
+package org.openmetromaps.maps;
+
+import org.openmetromaps.maps.model.*;
+
+import java.util.*;
+
+/**
+ * Assignment of every station to its nearest facility, computed by one multi-source search
+ * seeded from all facilities at once.
+ * <p>
+ * For station index {@code s} of the network, {@link #getFacilityIndices()} holds the index of
+ * the nearest facility in the facility list ({@code -1} if none is within the limit) and
+ * {@link #getDistances()} the distance to it. Equally near facilities are resolved to the lowest
+ * facility index and the station is flagged as tied.
+ */
+public final class CatchmentPartition {
+    private static final double TIE_EPSILON = 1e-9;
+
+    private final TraversalNetwork network;
+    private final List<Station> facilities;
+    private final int[] facilityOf;
+    private final double[] distance;
+    private final boolean[] tied;
+
+    private CatchmentPartition(TraversalNetwork network, List<Station> facilities, int[] facilityOf,
+                               double[] distance, boolean[] tied) {
+        this.network = network;
+        this.facilities = facilities;
+        this.facilityOf = facilityOf;
+        this.distance = distance;
+        this.tied = tied;
+    }
+
+    /**
+     * Partitions the stations by nearest facility. With {@code towardsFacility} the distance is
+     * measured from the station to the facility (who can get to the hospital), otherwise from the
+     * facility to the station (where a depot can serve).
+     */
+    public static CatchmentPartition compute(TraversalNetwork network, List<Station> facilities,
+                                             TraversalMetric metric, int limit,
+                                             boolean towardsFacility) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must be non-negative");
+        }
+        if (network == null || facilities == null || metric == null) {
+            throw new IllegalArgumentException("Network, facility stations and metric must not be null");
+        }
+        for (Station facility : facilities) {
+            if (facility == null) {
+                throw new IllegalArgumentException("Network, facility stations and metric must not be null");
+            }
+        }
+
+        int[] stationStopStart = network.stationStopStart;
+        int[] stopStation = network.stopStation;
+        int[] arcStart = towardsFacility ? network.reverseArcStart : network.arcStart;
+        int[] arcHead = towardsFacility ? network.reverseArcTail : network.arcHead;
+        TraversalNetwork.Weights weights = network.weights(metric);
+        double[] arcCost = towardsFacility ? weights.reverseArcCost : weights.arcCost;
+        double[] transferCost = weights.transferCost;
+        double[] walkCost = towardsFacility ? weights.reverseWalkCost : weights.walkCost;
+        boolean walking = weights.walking;
+        double seedLabel = weights.startLabel;
+
+        int stopCount = network.stopCount();
+        double[] labels = new double[stopCount];
+        Arrays.fill(labels, Double.POSITIVE_INFINITY);
+        int[] owner = new int[stopCount];
+        Arrays.fill(owner, -1);
+        boolean[] stopTied = new boolean[stopCount];
+        boolean[] queued = new boolean[stopCount];
+        LabelHeap heap = new LabelHeap(stopCount);
+
+        int[] facilityStation = new int[facilities.size()];
+        for (int f = 0; f < facilities.size(); f++) {
+            facilityStation[f] = network.indexOf(facilities.get(f));
+            for (int u = stationStopStart[facilityStation[f]]; u < stationStopStart[facilityStation[f] + 1]; u++) {
+                update(u, seedLabel, f, false, labels, owner, stopTied, queued, heap);
+            }
+        }
+
+        // Dijkstra; egyenlő címke esetén a kisebb indexű létesítmény nyer, és a döntetlen továbbterjed
+        while (!heap.isEmpty()) {
+            int current = heap.peekNode();
+            double currentLabel = heap.peekLabel();
+            heap.pop();
+            if (!queued[current] || currentLabel != labels[current]) {
+                continue;
+            }
+            queued[current] = false;
+
+            int currentOwner = owner[current];
+            boolean currentTied = stopTied[current];
+            int station = stopStation[current];
+            for (int arc = arcStart[current]; arc < arcStart[current + 1]; arc++) {
+                double label = currentLabel + arcCost[arc];
+                if (label <= limit) {
+                    update(arcHead[arc], label, currentOwner, currentTied, labels, owner, stopTied, queued, heap);
+                }
+            }
+            double transferLabel = currentLabel + transferCost[station];
+            if (transferLabel <= limit) {
+                for (int other = stationStopStart[station]; other < stationStopStart[station + 1]; other++) {
+                    if (other != current) {
+                        update(other, transferLabel, currentOwner, currentTied, labels, owner, stopTied, queued, heap);
+                    }
+                }
+            }
+            if (walking) {
+                for (int walk = weights.walkStart[station]; walk < weights.walkStart[station + 1]; walk++) {
+                    double walkLabel = currentLabel + walkCost[walk];
+                    int target = weights.walkTarget[walk];
+                    if (walkLabel <= limit) {
+                        for (int other = stationStopStart[target]; other < stationStopStart[target + 1]; other++) {
+                            update(other, walkLabel, currentOwner, currentTied, labels, owner, stopTied, queued, heap);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Állomásszintű eredmény: a legjobb stop címkéje és tulajdonosa
+        int stationCount = network.stationCount();
+        int[] facilityOf = new int[stationCount];
+        Arrays.fill(facilityOf, -1);
+        double[] distance = new double[stationCount];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        boolean[] tied = new boolean[stationCount];
+        for (int s = 0; s < stationCount; s++) {
+            for (int u = stationStopStart[s]; u < stationStopStart[s + 1]; u++) {
+                if (owner[u] < 0) {
+                    continue;
+                }
+                if (facilityOf[s] < 0 || labels[u] < distance[s] - TIE_EPSILON) {
+                    facilityOf[s] = owner[u];
+                    distance[s] = labels[u];
+                    tied[s] = stopTied[u];
+                } else if (labels[u] <= distance[s] + TIE_EPSILON) {
+                    tied[s] |= stopTied[u] || owner[u] != facilityOf[s];
+                    facilityOf[s] = Math.min(facilityOf[s], owner[u]);
+                    distance[s] = Math.min(distance[s], labels[u]);
+                }
+            }
+        }
+        // Megálló nélküli létesítmény-állomások önmagukhoz tartoznak
+        for (int f = facilityStation.length - 1; f >= 0; f--) {
+            int s = facilityStation[f];
+            if (stationStopStart[s] == stationStopStart[s + 1]) {
+                tied[s] = facilityOf[s] >= 0 && facilityOf[s] != f;
+                facilityOf[s] = f;
+                distance[s] = seedLabel;
+            }
+        }
+
+        return new CatchmentPartition(network, Collections.unmodifiableList(new ArrayList<>(facilities)),
+                facilityOf, distance, tied);
+    }
+
+    private static void update(int stop, double label, int labelOwner, boolean labelTied, double[] labels,
+                               int[] owner, boolean[] stopTied, boolean[] queued, LabelHeap heap) {
+        double current = labels[stop];
+        if (label < current - TIE_EPSILON) {
+            labels[stop] = label;
+            owner[stop] = labelOwner;
+            stopTied[stop] = labelTied;
+        } else if (label <= current + TIE_EPSILON) {
+            boolean newTied = stopTied[stop] || labelTied || labelOwner != owner[stop];
+            int newOwner = Math.min(owner[stop], labelOwner);
+            if (newTied == stopTied[stop] && newOwner == owner[stop]) {
+                return;
+            }
+            stopTied[stop] = newTied;
+            owner[stop] = newOwner;
+        } else {
+            return;
+        }
+        // Újra feldolgozzuk, hogy a javult tulajdonos vagy döntetlen továbbterjedjen
+        queued[stop] = true;
+        heap.push(stop, labels[stop]);
+    }
+
+    public TraversalNetwork getNetwork() {
+        return network;
+    }
+
+    public List<Station> getFacilities() {
+        return facilities;
+    }
+
+    public int[] getFacilityIndices() {
+        return facilityOf;
+    }
+
+    public double[] getDistances() {
+        return distance;
+    }
+
+    public Station getFacility(Station station) {
+        int f = facilityOf[network.indexOf(station)];
+        return f < 0 ? null : facilities.get(f);
+    }
+
+    public double getDistance(Station station) {
+        return distance[network.indexOf(station)];
+    }
+
+    public boolean isTied(Station station) {
+        return tied[network.indexOf(station)];
+    }
+
+    /**
+     * Stations assigned to the facility, in network order.
+     */
+    public List<Station> getCatchment(Station facility) {
+        int f = facilities.indexOf(facility);
+        if (f < 0) {
+            throw new IllegalArgumentException("Station is not a facility of this partition: " + facility);
+        }
+        List<Station> result = new ArrayList<>();
+        for (int s = 0; s < facilityOf.length; s++) {
+            if (facilityOf[s] == f) {
+                result.add(network.getStation(s));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,438 @@
+package org.openmetromaps.maps;
+
+import org.openmetromaps.maps.model.*;
+
+import java.util.*;
+
+/**
+ * Earliest-arrival queries over a {@link Timetable} using the Connection Scan Algorithm.
+ * <p>
+ * Every elementary connection (one trip between two consecutive stops) is stored in a single
+ * {@code int[]} sorted by departure and then arrival time, so a query is one forward scan over
+ * contiguous memory. Profile queries scan the same array through an index sorted by arrival
+ * time. Times are seconds since midnight. Changing trips at a station takes the station's
+ * transfer penalty of the {@link TraversalNetwork}.
+ */
+public final class ConnectionScan {
+    static final int UNREACHED = Integer.MAX_VALUE;
+
+    static final int DEP_STATION = 0;
+    static final int ARR_STATION = 1;
+    static final int DEP_TIME = 2;
+    static final int ARR_TIME = 3;
+    static final int TRIP = 4;
+    static final int STRIDE = 5;
+
+    private final TraversalNetwork network;
+    final int[] connections;
+    final int[] arrivalOrder;
+    final int connectionCount;
+    final int tripCount;
+
+    public ConnectionScan(TraversalNetwork network, Timetable timetable) {
+        if (network == null || timetable == null) {
+            throw new IllegalArgumentException("Network and timetable must not be null");
+        }
+        this.network = network;
+
+        int count = 0;
+        int trips = 0;
+        for (Timetable.LineTimetable lineTimetable : timetable.getLineTimetables()) {
+            count += lineTimetable.getTripCount() * Math.max(lineTimetable.getStopCount() - 1, 0);
+            trips += lineTimetable.getTripCount();
+        }
+        this.connectionCount = count;
+        this.tripCount = trips;
+
+        int[] unsorted = new int[count * STRIDE];
+        int[] position = new int[count];
+        Integer[] order = new Integer[count];
+        int c = 0;
+        int tripId = 0;
+        for (Timetable.LineTimetable lineTimetable : timetable.getLineTimetables()) {
+            for (int trip = 0; trip < lineTimetable.getTripCount(); trip++, tripId++) {
+                int from = network.indexOf(lineTimetable.getStop(trip, 0).getStation());
+                for (int i = 1; i < lineTimetable.getStopCount(); i++, c++) {
+                    int to = network.indexOf(lineTimetable.getStop(trip, i).getStation());
+                    int base = c * STRIDE;
+                    unsorted[base + DEP_STATION] = from;
+                    unsorted[base + ARR_STATION] = to;
+                    unsorted[base + DEP_TIME] = lineTimetable.getDeparture(trip, i - 1);
+                    unsorted[base + ARR_TIME] = lineTimetable.getArrival(trip, i);
+                    unsorted[base + TRIP] = tripId;
+                    position[c] = i - 1;
+                    order[c] = c;
+                    from = to;
+                }
+            }
+        }
+
+        // Indulási, majd érkezési idő szerinti rendezés, hogy egy t-kor érkező nulla idejű kapcsolat
+        // a t-kor induló kapcsolatok elé kerüljön; egy járaton belül a megállók sorrendje marad, a
+        // különböző járatok nulla idejű kapcsolatainak sorrendjét a keresés ismétlése kezeli
+        Arrays.sort(order, (a, b) -> {
+            int byDeparture = Integer.compare(unsorted[a * STRIDE + DEP_TIME], unsorted[b * STRIDE + DEP_TIME]);
+            if (byDeparture != 0) {
+                return byDeparture;
+            }
+            int byArrival = Integer.compare(unsorted[a * STRIDE + ARR_TIME], unsorted[b * STRIDE + ARR_TIME]);
+            if (byArrival != 0) {
+                return byArrival;
+            }
+            return position[a] != position[b] ? Integer.compare(position[a], position[b]) : Integer.compare(a, b);
+        });
+        this.connections = new int[count * STRIDE];
+        int[] sortedPosition = new int[count];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(unsorted, order[i] * STRIDE, connections, i * STRIDE, STRIDE);
+            sortedPosition[i] = position[order[i]];
+        }
+
+        // Érkezési, majd indulási idő szerint: egy t-kor érkező kapcsolat a t-kor induló nulla idejűek elé kerül
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        int[] sorted = connections;
+        Arrays.sort(order, (a, b) -> {
+            int byArrival = Integer.compare(sorted[a * STRIDE + ARR_TIME], sorted[b * STRIDE + ARR_TIME]);
+            if (byArrival != 0) {
+                return byArrival;
+            }
+            int byDeparture = Integer.compare(sorted[a * STRIDE + DEP_TIME], sorted[b * STRIDE + DEP_TIME]);
+            if (byDeparture != 0) {
+                return byDeparture;
+            }
+            return sortedPosition[a] != sortedPosition[b]
+                    ? Integer.compare(sortedPosition[a], sortedPosition[b]) : Integer.compare(a, b);
+        });
+        this.arrivalOrder = new int[count];
+        for (int i = 0; i < count; i++) {
+            arrivalOrder[i] = order[i] * STRIDE;
+        }
+    }
+
+    public TraversalNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * Stations reachable from {@code src} by {@code arrivalDeadline} when departing at
+     * {@code departureTime}, ordered by station index of the network.
+     */
+    public List<Station> reachableStations(Station src, int departureTime, int arrivalDeadline) {
+        int[] arrivals = earliestArrivals(src, departureTime, arrivalDeadline);
+        List<Station> result = new ArrayList<>();
+        for (int s = 0; s < arrivals.length; s++) {
+            if (arrivals[s] != UNREACHED) {
+                result.add(network.getStation(s));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Earliest arrival time at every station index of the network, or {@link Integer#MAX_VALUE}
+     * where the station cannot be reached by {@code arrivalDeadline}.
+     */
+    public int[] earliestArrivals(Station src, int departureTime, int arrivalDeadline) {
+        if (src == null) {
+            throw new IllegalArgumentException("Source station must not be null");
+        }
+        if (departureTime < 0 || arrivalDeadline < departureTime) {
+            throw new IllegalArgumentException("Arrival deadline must not precede a non-negative departure time");
+        }
+
+        int source = network.indexOf(src);
+        int[] arrivals = new int[network.stationCount()];
+        Arrays.fill(arrivals, UNREACHED);
+        arrivals[source] = departureTime;
+        scan(source, departureTime, arrivalDeadline, arrivals, new boolean[tripCount]);
+        return arrivals;
+    }
+
+    /**
+     * Earliest-arrival function of every station for all departures from {@code src} at
+     * {@code windowStart}, {@code windowStart + stepSeconds}, ... up to {@code windowEnd}.
+     * <p>
+     * This is the profile variant of the Connection Scan Algorithm for a fixed source. The
+     * connections are scanned in order of arrival time, only once apart from zero-duration groups
+     * as in {@link #earliestArrivals(Station, int, int)}. Every station keeps the Pareto set of
+     * (latest departure from {@code src}, earliest arrival) pairs found so far, and every trip the
+     * latest departure from {@code src} with which it can be ridden. The arrivals for the
+     * departures of the window are read from the Pareto sets at the end, so the scan does not
+     * depend on the number of departures.
+     */
+    public ReachabilityProfile profile(Station src, int windowStart, int windowEnd, int stepSeconds, int maxDuration) {
+        if (src == null) {
+            throw new IllegalArgumentException("Source station must not be null");
+        }
+        if (windowStart < 0 || windowEnd < windowStart || stepSeconds <= 0 || maxDuration < 0) {
+            throw new IllegalArgumentException("Invalid departure window");
+        }
+
+        int stationCount = network.stationCount();
+        int departureCount = (windowEnd - windowStart) / stepSeconds + 1;
+        ProfileScan scan = new ProfileScan(network.indexOf(src), windowStart,
+                windowStart + (departureCount - 1) * stepSeconds, maxDuration);
+        scan.run();
+
+        int[] profile = new int[departureCount * stationCount];
+        for (int s = 0; s < stationCount; s++) {
+            int[] departures = scan.pairDeparture[s];
+            int[] arrivals = scan.pairArrival[s];
+            int pairCount = scan.pairCount[s];
+            int p = 0;
+            for (int k = 0; k < departureCount; k++) {
+                int departureTime = windowStart + k * stepSeconds;
+                int arrival = UNREACHED;
+                if (s == scan.source) {
+                    arrival = departureTime;
+                } else {
+                    // Az első legalább ilyen késői indulású pár érkezik a legkorábban
+                    while (p < pairCount && departures[p] < departureTime) {
+                        p++;
+                    }
+                    if (p < pairCount && arrivals[p] - departureTime <= maxDuration) {
+                        arrival = arrivals[p];
+                    }
+                }
+                profile[k * stationCount + s] = arrival;
+            }
+        }
+
+        return new ReachabilityProfile(network, windowStart, stepSeconds, departureCount, maxDuration, profile);
+    }
+
+    private final class ProfileScan {
+        private static final int NONE = -1;
+
+        final int source;
+        final int windowStart;
+        final int lastDeparture;
+        final int maxDuration;
+        final int[][] pairDeparture;
+        final int[][] pairArrival;
+        final int[] pairCount;
+        final int[] tripDeparture;
+
+        ProfileScan(int source, int windowStart, int lastDeparture, int maxDuration) {
+            this.source = source;
+            this.windowStart = windowStart;
+            this.lastDeparture = lastDeparture;
+            this.maxDuration = maxDuration;
+            int stationCount = network.stationCount();
+            this.pairDeparture = new int[stationCount][];
+            this.pairArrival = new int[stationCount][];
+            this.pairCount = new int[stationCount];
+            this.tripDeparture = new int[tripCount];
+            Arrays.fill(tripDeparture, NONE);
+        }
+
+        void run() {
+            int[] connections = ConnectionScan.this.connections;
+            int arrivalLimit = (int) Math.min((long) lastDeparture + maxDuration, UNREACHED - 1);
+
+            int i = firstArrivingAt(windowStart);
+            while (i < connectionCount) {
+                int c = arrivalOrder[i];
+                int arrTime = connections[c + ARR_TIME];
+                if (arrTime > arrivalLimit) {
+                    break;
+                }
+                int end = i + 1;
+                if (connections[c + DEP_TIME] == arrTime) {
+                    while (end < connectionCount && connections[arrivalOrder[end] + ARR_TIME] == arrTime
+                            && connections[arrivalOrder[end] + DEP_TIME] == arrTime) {
+                        end++;
+                    }
+                }
+                if (end == i + 1) {
+                    extend(c);
+                } else {
+                    extendInstant(i, end);
+                }
+                i = end;
+            }
+        }
+
+        private void extendInstant(int from, int to) {
+            int[] departureBefore = new int[to - from];
+            for (int i = from; i < to; i++) {
+                departureBefore[i - from] = tripDeparture[connections[arrivalOrder[i] + TRIP]];
+            }
+            boolean improved;
+            do {
+                // Ahogy a scan-ben: minden kör a csoport előtti járatállapotból indul
+                for (int i = to - 1; i >= from; i--) {
+                    tripDeparture[connections[arrivalOrder[i] + TRIP]] = departureBefore[i - from];
+                }
+                improved = false;
+                for (int i = from; i < to; i++) {
+                    improved |= extend(arrivalOrder[i]);
+                }
+            } while (improved);
+        }
+
+        private boolean extend(int c) {
+            int depTime = connections[c + DEP_TIME];
+            if (depTime < windowStart) {
+                return false;
+            }
+            int trip = connections[c + TRIP];
+            int from = connections[c + DEP_STATION];
+            // Felszállás: a kiinduló állomásról legkésőbb az ablak utolsó indulásával, máshol a
+            // legkésőbbi olyan párral, amely az átszállási idővel együtt időben ideér
+            int boarding = from == source ? Math.min(depTime, lastDeparture) : latestReadyDeparture(from, depTime);
+            int departure = Math.max(tripDeparture[trip], boarding);
+            int arrTime = connections[c + ARR_TIME];
+            if (departure == NONE || arrTime - departure > maxDuration) {
+                return false;
+            }
+            tripDeparture[trip] = departure;
+
+            int to = connections[c + ARR_STATION];
+            if (to == source) {
+                return false;
+            }
+            int count = pairCount[to];
+            if (count > 0 && pairDeparture[to][count - 1] >= departure) {
+                return false;
+            }
+            // Az érkezések nem csökkennek, így az új pár csak az azonos érkezésű utolsót válthatja ki
+            if (count > 0 && pairArrival[to][count - 1] == arrTime) {
+                pairDeparture[to][count - 1] = departure;
+                return true;
+            }
+            if (count == 0) {
+                pairDeparture[to] = new int[4];
+                pairArrival[to] = new int[4];
+            } else if (count == pairDeparture[to].length) {
+                pairDeparture[to] = Arrays.copyOf(pairDeparture[to], count * 2);
+                pairArrival[to] = Arrays.copyOf(pairArrival[to], count * 2);
+            }
+            pairDeparture[to][count] = departure;
+            pairArrival[to][count] = arrTime;
+            pairCount[to] = count + 1;
+            return true;
+        }
+
+        private int latestReadyDeparture(int station, int depTime) {
+            int[] arrivals = pairArrival[station];
+            double transfer = network.transferPenalty[station] * 60;
+            int low = 0;
+            int high = pairCount[station];
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (arrivals[mid] + transfer <= depTime) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low == 0 ? NONE : pairDeparture[station][low - 1];
+        }
+    }
+
+    /**
+     * Scans the connections departing in {@code [departureTime, arrivalDeadline]} and lowers the
+     * given arrival labels. Labels already present are treated as valid upper bounds.
+     * <p>
+     * Zero-duration connections departing at the same time may feed each other in any order, so
+     * such a group is scanned again until no label improves.
+     */
+    void scan(int source, int departureTime, int arrivalDeadline, int[] arrivals, boolean[] tripReached) {
+        int[] connections = this.connections;
+
+        int c = firstDepartingAt(departureTime) * STRIDE;
+        while (c < connections.length) {
+            int depTime = connections[c + DEP_TIME];
+            if (depTime > arrivalDeadline) {
+                break;
+            }
+            int end = c + STRIDE;
+            if (connections[c + ARR_TIME] == depTime) {
+                while (end < connections.length && connections[end + DEP_TIME] == depTime
+                        && connections[end + ARR_TIME] == depTime) {
+                    end += STRIDE;
+                }
+            }
+            if (end - c == STRIDE) {
+                relax(c, source, arrivalDeadline, arrivals, tripReached);
+            } else {
+                scanInstant(c, end, source, arrivalDeadline, arrivals, tripReached);
+            }
+            c = end;
+        }
+    }
+
+    private void scanInstant(int from, int to, int source, int arrivalDeadline, int[] arrivals, boolean[] tripReached) {
+        boolean[] reachedBefore = new boolean[(to - from) / STRIDE];
+        for (int c = from; c < to; c += STRIDE) {
+            reachedBefore[(c - from) / STRIDE] = tripReached[connections[c + TRIP]];
+        }
+        boolean improved;
+        do {
+            // Minden kör a csoport előtti felszállásokkal indul, különben egy járat a később
+            // elért megállója előtti szakaszokon is használható lenne
+            for (int c = to - STRIDE; c >= from; c -= STRIDE) {
+                tripReached[connections[c + TRIP]] = reachedBefore[(c - from) / STRIDE];
+            }
+            improved = false;
+            for (int c = from; c < to; c += STRIDE) {
+                improved |= relax(c, source, arrivalDeadline, arrivals, tripReached);
+            }
+        } while (improved);
+    }
+
+    private boolean relax(int c, int source, int arrivalDeadline, int[] arrivals, boolean[] tripReached) {
+        int trip = connections[c + TRIP];
+        if (!tripReached[trip]) {
+            int from = connections[c + DEP_STATION];
+            if (arrivals[from] == UNREACHED) {
+                return false;
+            }
+            // Felszállás: a kiinduló állomáson nincs átszállási idő
+            double ready = from == source ? arrivals[from] : arrivals[from] + network.transferPenalty[from] * 60;
+            if (ready > connections[c + DEP_TIME]) {
+                return false;
+            }
+            tripReached[trip] = true;
+        }
+
+        int to = connections[c + ARR_STATION];
+        int arrTime = connections[c + ARR_TIME];
+        if (arrTime <= arrivalDeadline && arrTime < arrivals[to]) {
+            arrivals[to] = arrTime;
+            return true;
+        }
+        return false;
+    }
+
+    int firstArrivingAt(int time) {
+        int low = 0;
+        int high = connectionCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (connections[arrivalOrder[mid] + ARR_TIME] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    int firstDepartingAt(int time) {
+        int low = 0;
+        int high = connectionCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (connections[mid * STRIDE + DEP_TIME] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
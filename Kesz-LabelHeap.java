@@ -0,0 +1,77 @@
+package org.openmetromaps.maps;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of (label, node) pairs stored in parallel primitive arrays.
+ * <p>
+ * Decrease-key is not supported: a node is pushed again with its better label and stale
+ * entries are skipped by the caller when polled.
+ */
+final class LabelHeap {
+    private double[] labels;
+    private int[] nodes;
+    private int size;
+
+    LabelHeap(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        labels = new double[capacity];
+        nodes = new int[capacity];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void push(int node, double label) {
+        if (size == nodes.length) {
+            labels = Arrays.copyOf(labels, size * 2);
+            nodes = Arrays.copyOf(nodes, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (labels[parent] <= label) {
+                break;
+            }
+            labels[i] = labels[parent];
+            nodes[i] = nodes[parent];
+            i = parent;
+        }
+        labels[i] = label;
+        nodes[i] = node;
+    }
+
+    double peekLabel() {
+        return labels[0];
+    }
+
+    int peekNode() {
+        return nodes[0];
+    }
+
+    void pop() {
+        double label = labels[--size];
+        int node = nodes[size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && labels[child + 1] < labels[child]) {
+                child++;
+            }
+            if (label <= labels[child]) {
+                break;
+            }
+            labels[i] = labels[child];
+            nodes[i] = nodes[child];
+            i = child;
+        }
+        labels[i] = label;
+        nodes[i] = node;
+    }
+}
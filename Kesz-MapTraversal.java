@@ -6,175 +6,385 @@ import java.util.*;
 
 public class MapTraversal {
 
-    public enum MapTraversalLimitType {
-        TRANSFER_LIMIT,
-        STOP_LIMIT,
-        TIME_LIMIT
+    /**
+     * Built-in metrics: line changes, stops passed, and minutes of travel including the minute
+     * spent at the start station, line-change penalties and walking transfers.
+     */
+    public enum MapTraversalLimitType implements TraversalMetric {
+        TRANSFER_LIMIT {
+            @Override
+            public double rideCost(Stop from, Stop to, double minutes) {
+                return 0;
+            }
+
+            @Override
+            public double transferCost(Station station, double transferPenalty) {
+                return 1;
+            }
+        },
+        STOP_LIMIT {
+            @Override
+            public double rideCost(Stop from, Stop to, double minutes) {
+                return 1;
+            }
+
+            @Override
+            public double transferCost(Station station, double transferPenalty) {
+                return 0;
+            }
+        },
+        TIME_LIMIT {
+            @Override
+            public double rideCost(Stop from, Stop to, double minutes) {
+                return minutes;
+            }
+
+            @Override
+            public double transferCost(Station station, double transferPenalty) {
+                return transferPenalty;
+            }
+
+            @Override
+            public double walkCost(Station from, Station to, double minutes) {
+                return minutes;
+            }
+
+            @Override
+            public double startLabel() {
+                // Starting station takes 1 minute to visit
+                return TraversalNetwork.STOP_DWELL_MINUTES;
+            }
+        };
+
+        @Override
+        public double walkCost(Station from, Station to, double minutes) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        @Override
+        public double startLabel() {
+            return 0;
+        }
     }
 
     public static List<Station> traverseMap(ModelData model, Station src, MapTraversalLimitType limitType, int limit) {
         if (limit < 0) {
             throw new IllegalArgumentException("Limit must be non-negative");
         }
-        if (model == null || src == null) {
-            throw new IllegalArgumentException("Model and source station must not be null");
+        if (model == null || src == null || limitType == null) {
+            throw new IllegalArgumentException("Model, source station and limit type must not be null");
         }
 
-        switch (limitType) {
-            case TRANSFER_LIMIT:
-                return traverseMapWithTransferLimit(model, src, limit);
-            case STOP_LIMIT:
-                return traverseMapWithStopLimit(model, src, limit);
-            case TIME_LIMIT:
-                return traverseMapWithTimeLimit(model, src, limit);
-            default:
-                throw new IllegalArgumentException("Invalid limit type");
+        return new ModelSearch(limitType, limit).run(src);
+    }
+
+    /**
+     * Same as {@link #traverseMap(ModelData, Station, MapTraversalLimitType, int)}, but runs on an
+     * already compiled network with any metric, so TIME_LIMIT charges the network's per-station
+     * transfer penalties and walking transfers, and the costs are evaluated once per network
+     * instead of on every step.
+     */
+    public static List<Station> traverseNetwork(TraversalNetwork network, Station src, TraversalMetric metric, int limit) {
+        return search(network, src, metric, limit, false, false).getReachableStations();
+    }
+
+    /**
+     * Stations from which {@code dest} can be reached within the limit, found by a single search
+     * backwards over the transposed ride arcs instead of one forward traversal per station.
+     */
+    public static List<Station> reverseTraverseNetwork(TraversalNetwork network, Station dest,
+                                                       TraversalMetric metric, int limit) {
+        return search(network, dest, metric, limit, true, false).getReachableStations();
+    }
+
+    /**
+     * Forward traversal that also records the predecessor of every reached stop, so the route to
+     * any reached station can be read from the result without searching again.
+     */
+    public static TraversalResult traverseNetworkWithPaths(TraversalNetwork network, Station src,
+                                                           TraversalMetric metric, int limit) {
+        return search(network, src, metric, limit, false, true);
+    }
+
+    /**
+     * Reverse traversal towards {@code dest} with recorded successors; the path of a station in
+     * the result leads from that station to {@code dest}.
+     */
+    public static TraversalResult reverseTraverseNetworkWithPaths(TraversalNetwork network, Station dest,
+                                                                  TraversalMetric metric, int limit) {
+        return search(network, dest, metric, limit, true, true);
+    }
+
+    private static TraversalResult search(TraversalNetwork network, Station station, TraversalMetric metric,
+                                          int limit, boolean reverse, boolean recordPaths) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must be non-negative");
+        }
+        if (network == null || station == null || metric == null) {
+            throw new IllegalArgumentException("Network, station and metric must not be null");
         }
+
+        TraversalNetwork.Weights weights = network.weights(metric);
+        return searchStops(network, reverse, weights, new int[] {network.indexOf(station)},
+                new double[] {weights.startLabel}, limit, recordPaths);
     }
 
-    private static List<Station> traverseMapWithTransferLimit(ModelData model, Station src, int maxTransfers) {
-        Set<Station> reachableStations = new LinkedHashSet<>();
-        Queue<Stop> queue = new LinkedList<>();
-        Map<Stop, Integer> transferCount = new HashMap<>();
-        Set<Stop> visitedStops = new HashSet<>();
-    
-        // Az induló állomás összes stopját hozzáadjuk a bejáráshoz
-        for (Stop stop : src.getStops()) {
-            queue.add(stop);
-            transferCount.put(stop, 0);
-            reachableStations.add(stop.getStation());
-        }
-    
-        while (!queue.isEmpty()) {
-            Stop currentStop = queue.poll();
-            Line currentLine = currentStop.getLine();
-            int currentTransfers = transferCount.get(currentStop);
-    
-            for (Stop lineStop : currentLine.getStops()) {
-                if (!visitedStops.contains(lineStop)) {
-                    visitedStops.add(lineStop);
-                    reachableStations.add(lineStop.getStation());
-    
-                    if (lineStop.getLine().equals(currentLine)) {
-                        queue.add(lineStop);
-                        transferCount.put(lineStop, currentTransfers);
-                    }
-                }
+    /**
+     * TIME_LIMIT search seeded from every station within walking distance of an arbitrary point.
+     * Each of those stations starts with its walking time plus the 1 minute spent at a starting
+     * station, and a single search returns the merged set of reachable stations.
+     */
+    public static List<Station> traverseMapFromCoordinate(SpatialIndex index, Coordinate origin,
+                                                          double walkRadiusMeters, double walkingSpeedKmh, int maxTime) {
+        if (maxTime < 0) {
+            throw new IllegalArgumentException("Limit must be non-negative");
+        }
+        if (index == null || origin == null) {
+            throw new IllegalArgumentException("Spatial index and origin must not be null");
+        }
+        if (!(walkingSpeedKmh > 0) || Double.isInfinite(walkingSpeedKmh)) {
+            throw new IllegalArgumentException("Walking speed must be a positive finite number");
+        }
+
+        TraversalNetwork network = index.getNetwork();
+        TraversalNetwork.Weights weights = network.weights(MapTraversalLimitType.TIME_LIMIT);
+        int[] nearby = index.stationsWithin(origin, walkRadiusMeters);
+        int[] seedStations = new int[nearby.length];
+        double[] seedTimes = new double[nearby.length];
+        int seeds = 0;
+        double metersPerMinute = walkingSpeedKmh * 1000 / 60;
+        for (int station : nearby) {
+            double walkTime = index.distanceMeters(origin, network.getStation(station).getLocation()) / metersPerMinute;
+            double startTime = walkTime + weights.startLabel;
+            if (startTime <= maxTime) {
+                seedStations[seeds] = station;
+                seedTimes[seeds++] = startTime;
             }
-    
-            // Átszállások kezelése
-            if (currentTransfers < maxTransfers) {
-                for (Stop neighborStop : currentStop.getStation().getStops()) {
-                    if (!neighborStop.getLine().equals(currentLine) && 
-                        (!transferCount.containsKey(neighborStop) || currentTransfers + 1 < transferCount.get(neighborStop))) {
-                        queue.add(neighborStop);
-                        transferCount.put(neighborStop, currentTransfers + 1);
-                    }
+        }
+
+        return searchStops(network, false, weights, Arrays.copyOf(seedStations, seeds),
+                Arrays.copyOf(seedTimes, seeds), maxTime, false).getReachableStations();
+    }
+
+    /**
+     * Label-setting search over the stop states of the network with the costs of one evaluated
+     * metric. Every stop of a seed station starts with the seed label, so changing line there is free.
+     * With {@code reverse} the transposed ride arcs and the reverse walking costs are used, so the
+     * labels are the cost of reaching the seeds instead of the cost from them. With {@code recordPaths} the predecessor
+     * of every labelled stop is kept for {@link TraversalResult#getPath(Station)}.
+     */
+    private static TraversalResult searchStops(TraversalNetwork network, boolean reverse, TraversalNetwork.Weights weights,
+                                               int[] seedStations, double[] seedLabels, double limit, boolean recordPaths) {
+        int[] stationStopStart = network.stationStopStart;
+        int[] stopStation = network.stopStation;
+        int[] arcStart = reverse ? network.reverseArcStart : network.arcStart;
+        int[] arcHead = reverse ? network.reverseArcTail : network.arcHead;
+        double[] arcCost = reverse ? weights.reverseArcCost : weights.arcCost;
+        double[] transferCost = weights.transferCost;
+        int[] walkStart = weights.walkStart;
+        int[] walkTarget = weights.walkTarget;
+        double[] walkCost = reverse ? weights.reverseWalkCost : weights.walkCost;
+        int walkEnd = weights.walking ? network.stationCount() : 0;
+
+        List<Station> reachableStations = new ArrayList<>();
+        boolean[] reached = new boolean[network.stationCount()];
+        double[] labels = new double[network.stopCount()];
+        Arrays.fill(labels, Double.POSITIVE_INFINITY);
+        int[] predecessor = null;
+        int[] firstStop = null;
+        if (recordPaths) {
+            predecessor = new int[network.stopCount()];
+            Arrays.fill(predecessor, TraversalResult.NO_PREDECESSOR);
+            firstStop = new int[network.stationCount()];
+            Arrays.fill(firstStop, TraversalResult.NO_PREDECESSOR);
+        }
+        LabelHeap heap = new LabelHeap(network.stopCount());
+
+        // A kiinduló állomások minden vonala a kezdő címkével indul
+        for (int i = 0; i < seedStations.length; i++) {
+            int seed = seedStations[i];
+            if (stationStopStart[seed] == stationStopStart[seed + 1] && !reached[seed]) {
+                reached[seed] = true;
+                reachableStations.add(network.getStation(seed));
+            }
+            for (int u = stationStopStart[seed]; u < stationStopStart[seed + 1]; u++) {
+                if (seedLabels[i] < labels[u]) {
+                    labels[u] = seedLabels[i];
+                    heap.push(u, seedLabels[i]);
                 }
             }
         }
-    
-        return new ArrayList<>(reachableStations);
-    }    
-    
-
-    private static List<Station> traverseMapWithStopLimit(ModelData model, Station src, int maxStops) {
-        Set<Station> reachableStations = new LinkedHashSet<>();
-        Queue<Station> queue = new LinkedList<>();
-        Map<Station, Integer> stops = new HashMap<>();
-
-        queue.add(src);
-        stops.put(src, 0);
-        reachableStations.add(src);
-
-        while (!queue.isEmpty()) {
-            Station current = queue.poll();
-            int currentStops = stops.get(current);
-
-            if (currentStops < maxStops) {
-                for (Stop stop : current.getStops()) {
-                    List<Stop> lineStops = stop.getLine().getStops();
-                    int index = lineStops.indexOf(stop);
-
-                    if (index > 0) {
-                        Stop prevStop = lineStops.get(index - 1);
-                        Station prevStation = prevStop.getStation();
-                        if (!stops.containsKey(prevStation)) {
-                            reachableStations.add(prevStation);
-                            queue.add(prevStation);
-                            stops.put(prevStation, currentStops + 1);
-                        }
-                    }
 
-                    if (index < lineStops.size() - 1) {
-                        Stop nextStop = lineStops.get(index + 1);
-                        Station nextStation = nextStop.getStation();
-                        if (!stops.containsKey(nextStation)) {
-                            reachableStations.add(nextStation);
-                            queue.add(nextStation);
-                            stops.put(nextStation, currentStops + 1);
-                        }
+        while (!heap.isEmpty()) {
+            int current = heap.peekNode();
+            double currentLabel = heap.peekLabel();
+            heap.pop();
+            if (currentLabel > labels[current]) {
+                continue;
+            }
+
+            int station = stopStation[current];
+            if (!reached[station]) {
+                reached[station] = true;
+                reachableStations.add(network.getStation(station));
+                if (firstStop != null) {
+                    firstStop[station] = current;
+                }
+            }
+
+            // Menet a vonalon a szomszédos megállókig
+            for (int arc = arcStart[current]; arc < arcStart[current + 1]; arc++) {
+                relax(arcHead[arc], currentLabel + arcCost[arc], limit, labels, heap, predecessor, current);
+            }
+
+            // Átszállás ugyanazon az állomáson egy másik vonalra
+            double transferLabel = currentLabel + transferCost[station];
+            for (int other = stationStopStart[station]; other < stationStopStart[station + 1]; other++) {
+                if (other != current) {
+                    relax(other, transferLabel, limit, labels, heap, predecessor, current);
+                }
+            }
+
+            // Gyalogos átszállás a közeli állomások bármely vonalára
+            if (station < walkEnd) {
+                for (int walk = walkStart[station]; walk < walkStart[station + 1]; walk++) {
+                    int target = walkTarget[walk];
+                    double walkLabel = currentLabel + walkCost[walk];
+                    for (int other = stationStopStart[target]; other < stationStopStart[target + 1]; other++) {
+                        relax(other, walkLabel, limit, labels, heap, predecessor, current);
                     }
                 }
             }
         }
 
-        return new ArrayList<>(reachableStations);
+        return new TraversalResult(network, reverse, reachableStations, labels, predecessor, firstStop);
     }
 
-    private static List<Station> traverseMapWithTimeLimit(ModelData model, Station src, int maxTime) {
-        Set<Station> reachableStations = new LinkedHashSet<>();
-        Queue<Station> queue = new LinkedList<>();
-        Map<Station, Double> timeSpent = new HashMap<>();
+    private static void relax(int stop, double label, double limit, double[] labels, LabelHeap heap,
+                              int[] predecessor, int from) {
+        if (label <= limit && label < labels[stop]) {
+            labels[stop] = label;
+            heap.push(stop, label);
+            if (predecessor != null) {
+                predecessor[stop] = from;
+            }
+        }
+    }
 
-        queue.add(src);
-        timeSpent.put(src, 1.0); // Starting station takes 1 minute to visit
-        reachableStations.add(src);
+    /**
+     * Label-setting search directly on the objects of the model, for queries without a compiled
+     * network. Costs are those of a freshly compiled network, without transfer penalties and
+     * walking transfers. As in the original model traversal, line changes use the stops listed by
+     * {@link Station#getStops()} and a stop rides to the neighbours of its first position in the line.
+     * Only the reached stops are numbered and labelled, so a query costs as much as the part of
+     * the map it explores instead of a compilation of the whole model.
+     */
+    private static final class ModelSearch {
+        private final TraversalMetric metric;
+        private final int limit;
 
-        while (!queue.isEmpty()) {
-            Station current = queue.poll();
-            double currentTime = timeSpent.get(current);
+        // A bejárt stopok helyi sorszámot kapnak, a címkék és a kupac ezen a sorszámon dolgoznak
+        private final Map<Stop, Integer> stopIndex = new HashMap<>();
+        private final List<Stop> stops = new ArrayList<>();
+        private double[] labels = new double[64];
+        private final LabelHeap heap = new LabelHeap(64);
 
-            for (Stop stop : current.getStops()) {
-                List<Stop> lineStops = stop.getLine().getStops();
-                int index = lineStops.indexOf(stop);
+        ModelSearch(TraversalMetric metric, int limit) {
+            this.metric = metric;
+            this.limit = limit;
+            Arrays.fill(labels, Double.POSITIVE_INFINITY);
+        }
 
-                if (index > 0) {
-                    Station prevStation = lineStops.get(index - 1).getStation();
-                    handleTimeLimitTraversal(current, prevStation, currentTime, maxTime, reachableStations, queue, timeSpent);
+        List<Station> run(Station src) {
+            List<Station> reachableStations = new ArrayList<>();
+            Set<Station> reached = new HashSet<>();
+
+            // A kiinduló állomás minden vonala a kezdő címkével indul
+            double startLabel = TraversalNetwork.Weights.checkCost(metric.startLabel());
+            if (src.getStops().isEmpty()) {
+                reached.add(src);
+                reachableStations.add(src);
+            }
+            for (Stop stop : src.getStops()) {
+                int u = localIndex(stop);
+                if (startLabel < labels[u]) {
+                    labels[u] = startLabel;
+                    heap.push(u, startLabel);
+                }
+            }
+
+            while (!heap.isEmpty()) {
+                int current = heap.peekNode();
+                double currentLabel = heap.peekLabel();
+                heap.pop();
+                if (currentLabel > labels[current]) {
+                    continue;
                 }
 
-                if (index < lineStops.size() - 1) {
-                    Station nextStation = lineStops.get(index + 1).getStation();
-                    handleTimeLimitTraversal(current, nextStation, currentTime, maxTime, reachableStations, queue, timeSpent);
+                Stop stop = stops.get(current);
+                Station station = stop.getStation();
+                if (reached.add(station)) {
+                    reachableStations.add(station);
+                }
+
+                // Menet a vonalon a szomszédos megállókig, a menetidő a hálózathoz hasonlóan a vonal irányában
+                List<Stop> lineStops = stop.getLine().getStops();
+                int position = lineStops.indexOf(stop);
+                if (position > 0) {
+                    Stop previous = lineStops.get(position - 1);
+                    relax(previous, currentLabel + rideCost(stop, previous, rideMinutes(previous, stop)));
+                }
+                if (position >= 0 && position + 1 < lineStops.size()) {
+                    Stop next = lineStops.get(position + 1);
+                    relax(next, currentLabel + rideCost(stop, next, rideMinutes(stop, next)));
+                }
+
+                // Átszállás ugyanazon az állomáson egy másik vonalra
+                double transferLabel = currentLabel
+                        + TraversalNetwork.Weights.checkCost(metric.transferCost(station, 0));
+                for (Stop other : station.getStops()) {
+                    if (other != stop) {
+                        relax(other, transferLabel);
+                    }
                 }
             }
-        }
 
-        return new ArrayList<>(reachableStations);
-    }
+            return reachableStations;
+        }
 
-    private static void handleTimeLimitTraversal(
-            Station current, Station neighbor, double currentTime, int maxTime,
-            Set<Station> reachableStations, Queue<Station> queue, Map<Station, Double> timeSpent) {
+        private double rideCost(Stop from, Stop to, double minutes) {
+            return TraversalNetwork.Weights.checkCost(metric.rideCost(from, to, minutes));
+        }
 
-        double timeRequired = calculateTravelTime(current.getLocation(), neighbor.getLocation()) + 1.0; // Travel + 1 min stop
-        if (!timeSpent.containsKey(neighbor) && currentTime + timeRequired <= maxTime) {
-            reachableStations.add(neighbor);
-            queue.add(neighbor);
-            timeSpent.put(neighbor, currentTime + timeRequired);
+        private static double rideMinutes(Stop lineFrom, Stop lineTo) {
+            return TraversalNetwork.travelMinutes(lineFrom.getStation().getLocation(),
+                    lineTo.getStation().getLocation()) + TraversalNetwork.STOP_DWELL_MINUTES;
         }
-    }
 
-    private static double calculateTravelTime(Coordinate from, Coordinate to) {
-        double lat1 = from.getLatitude();
-        double lon1 = from.getLongitude();
-        double lat2 = to.getLatitude();
-        double lon2 = to.getLongitude();
+        private void relax(Stop stop, double label) {
+            if (label > limit) {
+                return;
+            }
+            int u = localIndex(stop);
+            if (label < labels[u]) {
+                labels[u] = label;
+                heap.push(u, label);
+            }
+        }
 
-        double deltaLat = Math.abs(lat1 - lat2) * 110.574;
-        double deltaLon = Math.abs(lon1 - lon2) * 111.320 * Math.cos(Math.toRadians(lat1));
-        double distance = Math.sqrt(deltaLat * deltaLat + deltaLon * deltaLon);
-        return (distance / 40) * 60; // 40 km/h in minutes
+        private int localIndex(Stop stop) {
+            Integer known = stopIndex.get(stop);
+            if (known != null) {
+                return known;
+            }
+            int u = stops.size();
+            stopIndex.put(stop, u);
+            stops.add(stop);
+            if (u == labels.length) {
+                labels = Arrays.copyOf(labels, u * 2);
+                Arrays.fill(labels, u, labels.length, Double.POSITIVE_INFINITY);
+            }
+            return u;
+        }
     }
 }
@@ -0,0 +1,172 @@
+package org.openmetromaps.maps;
+
+import org.openmetromaps.maps.model.*;
+
+/**
+ * Approximate number of stations reachable within {@code k} stops from every station, computed
+ * HyperANF style.
+ * <p>
+ * Every station keeps a HyperLogLog counter of {@code 2^log2Registers} registers. Round
+ * {@code k} replaces each counter with the union of itself and the counters of its neighbours,
+ * so after {@code k} rounds it estimates the size of the {@code k}-stop ball. Registers are
+ * 8-bit lanes packed eight to a {@code long}, and a union is a word-wise lane maximum computed
+ * with plain long arithmetic. Each estimate has a relative standard error of about
+ * {@code 1.04 / sqrt(2^log2Registers)}.
+ */
+public final class NeighbourhoodFunction {
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private final TraversalNetwork network;
+    private final int registers;
+    private final int maxStops;
+    private final float[] estimates;
+
+    private NeighbourhoodFunction(TraversalNetwork network, int registers, int maxStops, float[] estimates) {
+        this.network = network;
+        this.registers = registers;
+        this.maxStops = maxStops;
+        this.estimates = estimates;
+    }
+
+    public static NeighbourhoodFunction compute(TraversalNetwork network, int maxStops, int log2Registers, long seed) {
+        if (network == null) {
+            throw new IllegalArgumentException("Network must not be null");
+        }
+        if (maxStops < 0) {
+            throw new IllegalArgumentException("Limit must be non-negative");
+        }
+        if (log2Registers < 4 || log2Registers > 16) {
+            throw new IllegalArgumentException("Register count must be between 2^4 and 2^16");
+        }
+
+        StationGraph graph = new StationGraph(network,
+                network.weights(MapTraversal.MapTraversalLimitType.STOP_LIMIT).arcCost);
+        int n = graph.stationCount;
+        int registers = 1 << log2Registers;
+        int words = registers / 8;
+
+        long[] current = new long[n * words];
+        long[] next = new long[n * words];
+        for (int v = 0; v < n; v++) {
+            long hash = mix(v + seed * 0x9E3779B97F4A7C15L);
+            int register = (int) (hash >>> (64 - log2Registers));
+            int rank = Long.numberOfLeadingZeros((hash << log2Registers) | (1L << (log2Registers - 1))) + 1;
+            int word = v * words + register / 8;
+            current[word] |= (long) rank << ((register % 8) * 8);
+        }
+
+        float[] estimates = new float[(maxStops + 1) * n];
+        for (int v = 0; v < n; v++) {
+            estimates[v] = (float) estimate(current, v * words, words, registers);
+        }
+
+        int round = 1;
+        for (; round <= maxStops; round++) {
+            boolean changed = false;
+            for (int v = 0; v < n; v++) {
+                int base = v * words;
+                System.arraycopy(current, base, next, base, words);
+                for (int arc = graph.start[v]; arc < graph.start[v + 1]; arc++) {
+                    int other = graph.head[arc] * words;
+                    for (int i = 0; i < words; i++) {
+                        next[base + i] = max(next[base + i], current[other + i]);
+                    }
+                }
+                boolean counterChanged = false;
+                for (int i = 0; i < words; i++) {
+                    if (next[base + i] != current[base + i]) {
+                        counterChanged = true;
+                        break;
+                    }
+                }
+                estimates[round * n + v] = counterChanged
+                        ? (float) estimate(next, base, words, registers)
+                        : estimates[(round - 1) * n + v];
+                changed |= counterChanged;
+            }
+            long[] swap = current;
+            current = next;
+            next = swap;
+            if (!changed) {
+                break;
+            }
+        }
+        // Stabilizálódás után a további körök eredménye változatlan
+        for (int k = round + 1; k <= maxStops; k++) {
+            System.arraycopy(estimates, round * n, estimates, k * n, n);
+        }
+
+        return new NeighbourhoodFunction(network, registers, maxStops, estimates);
+    }
+
+    /**
+     * Lane-wise maximum of eight 7-bit registers packed into each operand.
+     */
+    static long max(long x, long y) {
+        long geq = ((x | HIGH_BITS) - y) & HIGH_BITS;
+        long mask = (geq >>> 7) * 0xFFL;
+        return (x & mask) | (y & ~mask);
+    }
+
+    private static double estimate(long[] counters, int base, int words, int registers) {
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < words; i++) {
+            long word = counters[base + i];
+            for (int lane = 0; lane < 8; lane++) {
+                int value = (int) (word >>> (lane * 8)) & 0xFF;
+                sum += Math.scalb(1.0, -value);
+                if (value == 0) {
+                    zeros++;
+                }
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / registers);
+        double raw = alpha * registers * registers / sum;
+        if (raw <= 2.5 * registers && zeros > 0) {
+            return registers * Math.log((double) registers / zeros);
+        }
+        return raw;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public int getMaxStops() {
+        return maxStops;
+    }
+
+    public double getRelativeStandardError() {
+        return 1.04 / Math.sqrt(registers);
+    }
+
+    /**
+     * Estimated number of stations reachable from the station within {@code stops} stops,
+     * including the station itself.
+     */
+    public double getEstimate(Station station, int stops) {
+        if (stops < 0 || stops > maxStops) {
+            throw new IndexOutOfBoundsException("Stop count out of range: " + stops);
+        }
+        return estimates[stops * network.stationCount() + network.indexOf(station)];
+    }
+
+    /**
+     * Estimated number of (source, target) pairs within {@code k} stops, for {@code k = 0..maxStops}.
+     */
+    public double[] getNeighbourhoodFunction() {
+        int n = network.stationCount();
+        double[] result = new double[maxStops + 1];
+        for (int k = 0; k <= maxStops; k++) {
+            double sum = 0;
+            for (int v = 0; v < n; v++) {
+                sum += estimates[k * n + v];
+            }
+            result[k] = sum;
+        }
+        return result;
+    }
+}
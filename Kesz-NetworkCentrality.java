@@ -0,0 +1,338 @@
+package org.openmetromaps.maps;
+
+import org.openmetromaps.maps.model.*;
+
+import java.util.*;
+
+/**
+ * Betweenness and closeness centrality of stations and segments, computed with Brandes'
+ * algorithm on the station graph of a {@link TraversalNetwork}.
+ * <p>
+ * Two stations are adjacent if some line stops at them consecutively. Segments are weighted by
+ * one stop ({@code STOP_LIMIT}) or by the riding time of the network ({@code TIME_LIMIT});
+ * transfer penalties are not part of the station graph. Betweenness counts ordered
+ * source-target pairs. Sources are distributed over worker threads that each keep their own
+ * primitive accumulators, which are summed once at the end.
+ */
+public final class NetworkCentrality {
+    private static final double EPSILON = 1e-9;
+
+    private final TraversalNetwork network;
+    private final boolean unitWeights;
+
+    private final int[] start;
+    private final int[] head;
+    private final double[] weight;
+    private final int[] reverseStart;
+    private final int[] reverseTail;
+    private final int[] reverseArc;
+
+    private NetworkCentrality(TraversalNetwork network, MapTraversal.MapTraversalLimitType metric) {
+        if (metric != MapTraversal.MapTraversalLimitType.STOP_LIMIT
+                && metric != MapTraversal.MapTraversalLimitType.TIME_LIMIT) {
+            throw new IllegalArgumentException("Centrality is defined for stop and time metrics only");
+        }
+        this.network = network;
+        this.unitWeights = metric == MapTraversal.MapTraversalLimitType.STOP_LIMIT;
+
+        StationGraph graph = new StationGraph(network, network.weights(metric).arcCost);
+        this.start = graph.start;
+        this.head = graph.head;
+        this.weight = graph.weight;
+        this.reverseStart = graph.reverseStart;
+        this.reverseTail = graph.reverseTail;
+        this.reverseArc = graph.reverseArc;
+    }
+
+    /**
+     * Exact centrality from every station as source.
+     */
+    public static Result compute(TraversalNetwork network, MapTraversal.MapTraversalLimitType metric, int threads) {
+        if (network == null) {
+            throw new IllegalArgumentException("Network must not be null");
+        }
+        int[] sources = new int[network.stationCount()];
+        for (int s = 0; s < sources.length; s++) {
+            sources[s] = s;
+        }
+        return new NetworkCentrality(network, metric).run(sources, 1.0, threads);
+    }
+
+    /**
+     * Approximate centrality from {@code sampleSize} uniformly sampled source stations.
+     * Betweenness is scaled by {@code stationCount / sampleSize}; closeness is only computed for
+     * the sampled stations and is {@code NaN} for the others.
+     */
+    public static Result computeSampled(TraversalNetwork network, MapTraversal.MapTraversalLimitType metric,
+                                        int sampleSize, long seed, int threads) {
+        if (network == null) {
+            throw new IllegalArgumentException("Network must not be null");
+        }
+        int n = network.stationCount();
+        if (sampleSize <= 0 || sampleSize > n) {
+            throw new IllegalArgumentException("Sample size must be between 1 and the number of stations");
+        }
+        int[] all = new int[n];
+        for (int s = 0; s < n; s++) {
+            all[s] = s;
+        }
+        Random random = new Random(seed);
+        for (int i = 0; i < sampleSize; i++) {
+            int j = i + random.nextInt(n - i);
+            int tmp = all[i];
+            all[i] = all[j];
+            all[j] = tmp;
+        }
+        return new NetworkCentrality(network, metric).run(Arrays.copyOf(all, sampleSize), (double) n / sampleSize, threads);
+    }
+
+    private Result run(int[] sources, double scale, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        int n = network.stationCount();
+        double[] closeness = new double[n];
+        double[] harmonic = new double[n];
+        Arrays.fill(closeness, Double.NaN);
+        Arrays.fill(harmonic, Double.NaN);
+
+        int workerCount = ParallelTasks.workerCount(threads, sources.length);
+        List<Worker> workers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(new Worker(closeness, harmonic));
+        }
+        try {
+            ParallelTasks.run(threads, sources.length, w -> {
+                Worker worker = workers.get(w);
+                return i -> worker.accumulate(sources[i]);
+            }, "Centrality computation");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Centrality computation was interrupted", e);
+        }
+
+        // A szálankénti akkumulátorok összegzése
+        double[] betweenness = new double[n];
+        double[] segmentBetweenness = new double[head.length];
+        for (Worker worker : workers) {
+            for (int v = 0; v < n; v++) {
+                betweenness[v] += worker.betweenness[v];
+            }
+            for (int arc = 0; arc < head.length; arc++) {
+                segmentBetweenness[arc] += worker.segmentBetweenness[arc];
+            }
+        }
+        if (scale != 1.0) {
+            for (int v = 0; v < n; v++) {
+                betweenness[v] *= scale;
+            }
+            for (int arc = 0; arc < head.length; arc++) {
+                segmentBetweenness[arc] *= scale;
+            }
+        }
+
+        int[] segmentFrom = new int[head.length];
+        for (int v = 0; v < n; v++) {
+            Arrays.fill(segmentFrom, start[v], start[v + 1], v);
+        }
+        return new Result(network, betweenness, closeness, harmonic, segmentFrom, head.clone(), segmentBetweenness);
+    }
+
+    private final class Worker {
+        final double[] betweenness;
+        final double[] segmentBetweenness;
+        private final double[] closeness;
+        private final double[] harmonic;
+
+        private final double[] distance;
+        private final double[] sigma;
+        private final double[] delta;
+        private final boolean[] settled;
+        private final int[] order;
+        private final LabelHeap heap;
+
+        Worker(double[] closeness, double[] harmonic) {
+            int n = network.stationCount();
+            this.betweenness = new double[n];
+            this.segmentBetweenness = new double[head.length];
+            this.closeness = closeness;
+            this.harmonic = harmonic;
+            this.distance = new double[n];
+            this.sigma = new double[n];
+            this.delta = new double[n];
+            this.settled = new boolean[n];
+            this.order = new int[n];
+            this.heap = new LabelHeap(n);
+            Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        }
+
+        void accumulate(int source) {
+            int reached = unitWeights ? breadthFirst(source) : dijkstra(source);
+
+            double distanceSum = 0;
+            double inverseSum = 0;
+            for (int i = reached - 1; i >= 0; i--) {
+                int w = order[i];
+                double dw = distance[w];
+                double coefficient = (1.0 + delta[w]) / sigma[w];
+                for (int r = reverseStart[w]; r < reverseStart[w + 1]; r++) {
+                    int v = reverseTail[r];
+                    int arc = reverseArc[r];
+                    if (Math.abs(distance[v] + weight[arc] - dw) <= EPSILON) {
+                        double c = sigma[v] * coefficient;
+                        delta[v] += c;
+                        segmentBetweenness[arc] += c;
+                    }
+                }
+                if (w != source) {
+                    betweenness[w] += delta[w];
+                    distanceSum += dw;
+                    inverseSum += 1.0 / dw;
+                }
+            }
+            closeness[source] = distanceSum > 0 ? (reached - 1) / distanceSum : 0.0;
+            harmonic[source] = inverseSum;
+
+            for (int i = 0; i < reached; i++) {
+                int v = order[i];
+                distance[v] = Double.POSITIVE_INFINITY;
+                sigma[v] = 0;
+                delta[v] = 0;
+                settled[v] = false;
+            }
+        }
+
+        private int breadthFirst(int source) {
+            distance[source] = 0;
+            sigma[source] = 1;
+            order[0] = source;
+            int tail = 1;
+            for (int i = 0; i < tail; i++) {
+                int v = order[i];
+                double next = distance[v] + 1;
+                for (int arc = start[v]; arc < start[v + 1]; arc++) {
+                    int w = head[arc];
+                    if (distance[w] == Double.POSITIVE_INFINITY) {
+                        distance[w] = next;
+                        order[tail++] = w;
+                    }
+                    if (distance[w] == next) {
+                        sigma[w] += sigma[v];
+                    }
+                }
+            }
+            return tail;
+        }
+
+        private int dijkstra(int source) {
+            distance[source] = 0;
+            sigma[source] = 1;
+            heap.clear();
+            heap.push(source, 0);
+            int reached = 0;
+            while (!heap.isEmpty()) {
+                int v = heap.peekNode();
+                double d = heap.peekLabel();
+                heap.pop();
+                if (settled[v] || d > distance[v]) {
+                    continue;
+                }
+                settled[v] = true;
+                order[reached++] = v;
+                for (int arc = start[v]; arc < start[v + 1]; arc++) {
+                    int w = head[arc];
+                    double candidate = d + weight[arc];
+                    if (candidate < distance[w] - EPSILON) {
+                        distance[w] = candidate;
+                        sigma[w] = sigma[v];
+                        heap.push(w, candidate);
+                    } else if (candidate <= distance[w] + EPSILON) {
+                        sigma[w] += sigma[v];
+                    }
+                }
+            }
+            return reached;
+        }
+    }
+
+    /**
+     * Centrality values indexed by network station index; segments are the directed arcs of the
+     * station graph.
+     */
+    public static final class Result {
+        private final TraversalNetwork network;
+        private final double[] betweenness;
+        private final double[] closeness;
+        private final double[] harmonicCloseness;
+        private final int[] segmentFrom;
+        private final int[] segmentTo;
+        private final double[] segmentBetweenness;
+
+        private Result(TraversalNetwork network, double[] betweenness, double[] closeness, double[] harmonicCloseness,
+                       int[] segmentFrom, int[] segmentTo, double[] segmentBetweenness) {
+            this.network = network;
+            this.betweenness = betweenness;
+            this.closeness = closeness;
+            this.harmonicCloseness = harmonicCloseness;
+            this.segmentFrom = segmentFrom;
+            this.segmentTo = segmentTo;
+            this.segmentBetweenness = segmentBetweenness;
+        }
+
+        public double getBetweenness(Station station) {
+            return betweenness[network.indexOf(station)];
+        }
+
+        public double getCloseness(Station station) {
+            return closeness[network.indexOf(station)];
+        }
+
+        public double getHarmonicCloseness(Station station) {
+            return harmonicCloseness[network.indexOf(station)];
+        }
+
+        public double[] getBetweenness() {
+            return betweenness;
+        }
+
+        public double[] getCloseness() {
+            return closeness;
+        }
+
+        public double[] getHarmonicCloseness() {
+            return harmonicCloseness;
+        }
+
+        public int getSegmentCount() {
+            return segmentFrom.length;
+        }
+
+        public Station getSegmentFrom(int segment) {
+            return network.getStation(segmentFrom[segment]);
+        }
+
+        public Station getSegmentTo(int segment) {
+            return network.getStation(segmentTo[segment]);
+        }
+
+        public double getSegmentBetweenness(int segment) {
+            return segmentBetweenness[segment];
+        }
+
+        /**
+         * The {@code k} stations with the highest betweenness, highest first.
+         */
+        public List<Station> mostCentralStations(int k) {
+            Integer[] ranked = new Integer[betweenness.length];
+            for (int v = 0; v < ranked.length; v++) {
+                ranked[v] = v;
+            }
+            Arrays.sort(ranked, (a, b) -> Double.compare(betweenness[b], betweenness[a]));
+            List<Station> result = new ArrayList<>();
+            for (int i = 0; i < Math.min(k, ranked.length); i++) {
+                result.add(network.getStation(ranked[i]));
+            }
+            return result;
+        }
+    }
+}
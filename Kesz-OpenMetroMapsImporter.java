@@ -0,0 +1,359 @@
+package org.openmetromaps.maps;
+
+import org.openmetromaps.maps.model.*;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Streaming reader of OpenMetroMaps XML files.
+ * <p>
+ * The file is read once with StAX, and only the {@code station}, {@code line} and {@code stop}
+ * elements inside {@code model} are kept; every other top-level element, including the views
+ * with their screen positions, is skipped without being materialised. While reading, a line only
+ * keeps the indices of its stations. The {@link Line} and {@link Stop} objects are created
+ * afterwards, one line per task on a fixed number of threads, and the stops are then appended
+ * to the stations in line order. Stations get the ids {@code 0..n-1} in file order and lines the
+ * ids after them. Optionally the {@link TraversalNetwork} is compiled as part of the import.
+ */
+public final class OpenMetroMapsImporter {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private OpenMetroMapsImporter() {
+    }
+
+    public static Result read(Path file, int threads, TraversalNetwork.StationOrder order) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("File must not be null");
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            return read(in, threads, order);
+        }
+    }
+
+    /**
+     * Reads a complete OpenMetroMaps document. With a non-null {@code order} the traversal
+     * network is compiled with that station order, otherwise only the model is built.
+     */
+    public static Result read(InputStream in, int threads, TraversalNetwork.StationOrder order) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("Input must not be null");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+
+        long startNanos = System.nanoTime();
+        CountingInputStream counted = new CountingInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+        Parser parser = new Parser();
+        try {
+            parser.parse(counted);
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed OpenMetroMaps file: " + e.getMessage(), e);
+        }
+        long parsedNanos = System.nanoTime();
+
+        ModelData model = parser.build(threads);
+        long builtNanos = System.nanoTime();
+
+        TraversalNetwork network = order == null ? null : TraversalNetwork.compile(model, order);
+        long compiledNanos = System.nanoTime();
+
+        int stopCount = 0;
+        for (Line line : model.lines) {
+            stopCount += line.getStops().size();
+        }
+        Statistics statistics = new Statistics(counted.count, model.stations.size(), model.lines.size(), stopCount,
+                parsedNanos - startNanos, builtNanos - parsedNanos, compiledNanos - builtNanos);
+        return new Result(model, network, statistics);
+    }
+
+    private static final class Parser {
+        final List<String> stationNames = new ArrayList<>();
+        final List<Coordinate> stationLocations = new ArrayList<>();
+        final Map<String, Integer> stationIndex = new HashMap<>();
+
+        final List<String> lineNames = new ArrayList<>();
+        final List<String> lineColors = new ArrayList<>();
+        final List<Boolean> lineCircular = new ArrayList<>();
+        final List<int[]> lineStations = new ArrayList<>();
+
+        // Később deklarált állomásokra mutató stopok: a negatív index -(k + 1) a k. függő nevet jelöli
+        final List<String> pendingNames = new ArrayList<>();
+
+        void parse(InputStream in) throws XMLStreamException, IOException {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                int[] current = null;
+                int currentSize = 0;
+                int depth = 0;
+                int modelDepth = 0;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String element = reader.getLocalName();
+                        depth++;
+                        if (modelDepth == 0) {
+                            // A modellen kívül csak a gyökérelem marad nyitva, a többi részfa kimarad
+                            if ("model".equals(element)) {
+                                modelDepth = depth;
+                            } else if (depth > 1) {
+                                skipElement(reader);
+                                depth--;
+                            }
+                        } else if ("station".equals(element)) {
+                            readStation(reader);
+                        } else if ("line".equals(element)) {
+                            lineNames.add(reader.getAttributeValue(null, "name"));
+                            lineColors.add(reader.getAttributeValue(null, "color"));
+                            lineCircular.add(Boolean.parseBoolean(reader.getAttributeValue(null, "circular")));
+                            current = new int[16];
+                            currentSize = 0;
+                        } else if ("stop".equals(element)) {
+                            if (current == null) {
+                                throw new IOException("Stop outside of a line at " + reader.getLocation());
+                            }
+                            if (currentSize == current.length) {
+                                current = Arrays.copyOf(current, currentSize * 2);
+                            }
+                            current[currentSize++] = stationReference(reader.getAttributeValue(null, "station"), reader);
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        if (depth == modelDepth) {
+                            modelDepth = 0;
+                        } else if (modelDepth != 0 && "line".equals(reader.getLocalName())) {
+                            lineStations.add(Arrays.copyOf(current, currentSize));
+                            current = null;
+                        }
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        /**
+         * Skips the current element with all of its content; the reader stops on its end tag.
+         */
+        private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+            int depth = 1;
+            while (depth > 0) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        }
+
+        private void readStation(XMLStreamReader reader) throws IOException {
+            String name = reader.getAttributeValue(null, "name");
+            String lat = reader.getAttributeValue(null, "lat");
+            String lon = reader.getAttributeValue(null, "lon");
+            if (name == null || lat == null || lon == null) {
+                throw new IOException("Station without name or coordinates at " + reader.getLocation());
+            }
+            if (stationIndex.putIfAbsent(name, stationNames.size()) != null) {
+                throw new IOException("Duplicate station name: " + name);
+            }
+            try {
+                stationLocations.add(new Coordinate(Double.parseDouble(lat), Double.parseDouble(lon)));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid coordinates of station " + name, e);
+            }
+            stationNames.add(name);
+        }
+
+        private int stationReference(String name, XMLStreamReader reader) throws IOException {
+            if (name == null) {
+                throw new IOException("Stop without station at " + reader.getLocation());
+            }
+            Integer index = stationIndex.get(name);
+            if (index != null) {
+                return index;
+            }
+            pendingNames.add(name);
+            return -pendingNames.size();
+        }
+
+        ModelData build(int threads) throws IOException {
+            int[] pending = new int[pendingNames.size()];
+            for (int k = 0; k < pending.length; k++) {
+                Integer index = stationIndex.get(pendingNames.get(k));
+                if (index == null) {
+                    throw new IOException("Stop refers to unknown station: " + pendingNames.get(k));
+                }
+                pending[k] = index;
+            }
+
+            int n = stationNames.size();
+            List<Station> stations = new ArrayList<>(n);
+            for (int s = 0; s < n; s++) {
+                stations.add(new Station(s, stationNames.get(s), stationLocations.get(s), new ArrayList<>()));
+            }
+
+            // A vonalak stoplistái egymástól függetlenek, ezért párhuzamosan építhetők
+            Line[] lines = new Line[lineStations.size()];
+            try {
+                ParallelTasks.run(threads, lines.length, w -> l -> {
+                    int[] members = lineStations.get(l);
+                    Line line = new Line(n + l, lineNames.get(l), lineColors.get(l), lineCircular.get(l),
+                            new ArrayList<>(members.length));
+                    for (int member : members) {
+                        line.getStops().add(new Stop(stations.get(member < 0 ? pending[-member - 1] : member), line));
+                    }
+                    lines[l] = line;
+                }, "Building lines");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Import was interrupted");
+            }
+
+            // Az állomások stoplistái vonalsorrendben, egy szálon
+            for (Line line : lines) {
+                for (Stop stop : line.getStops()) {
+                    stop.getStation().getStops().add(stop);
+                }
+            }
+            return new ModelData(new ArrayList<>(Arrays.asList(lines)), stations);
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    public static final class Result {
+        private final ModelData model;
+        private final TraversalNetwork network;
+        private final Statistics statistics;
+
+        private Result(ModelData model, TraversalNetwork network, Statistics statistics) {
+            this.model = model;
+            this.network = network;
+            this.statistics = statistics;
+        }
+
+        public ModelData getModel() {
+            return model;
+        }
+
+        /**
+         * The compiled network, or {@code null} if no station order was given.
+         */
+        public TraversalNetwork getNetwork() {
+            return network;
+        }
+
+        public Statistics getStatistics() {
+            return statistics;
+        }
+    }
+
+    /**
+     * Size of the imported network and time spent in the phases of the import.
+     */
+    public static final class Statistics {
+        private final long bytes;
+        private final int stationCount;
+        private final int lineCount;
+        private final int stopCount;
+        private final long parseNanos;
+        private final long buildNanos;
+        private final long compileNanos;
+
+        private Statistics(long bytes, int stationCount, int lineCount, int stopCount,
+                           long parseNanos, long buildNanos, long compileNanos) {
+            this.bytes = bytes;
+            this.stationCount = stationCount;
+            this.lineCount = lineCount;
+            this.stopCount = stopCount;
+            this.parseNanos = parseNanos;
+            this.buildNanos = buildNanos;
+            this.compileNanos = compileNanos;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public int getStationCount() {
+            return stationCount;
+        }
+
+        public int getLineCount() {
+            return lineCount;
+        }
+
+        public int getStopCount() {
+            return stopCount;
+        }
+
+        public long getParseNanos() {
+            return parseNanos;
+        }
+
+        public long getBuildNanos() {
+            return buildNanos;
+        }
+
+        public long getCompileNanos() {
+            return compileNanos;
+        }
+
+        /**
+         * Input size divided by the time of the whole import, in megabytes (10^6 bytes) per second.
+         */
+        public double getMegabytesPerSecond() {
+            long total = parseNanos + buildNanos + compileNanos;
+            return total == 0 ? 0.0 : bytes / 1e6 / (total / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d stations, %d lines, %d stops, %.1f MB in %.1f ms (%.1f MB/s)",
+                    stationCount, lineCount, stopCount, bytes / 1e6,
+                    (parseNanos + buildNanos + compileNanos) / 1e6, getMegabytesPerSecond());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.openmetromaps.maps;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Runs the independent tasks {@code 0 .. taskCount - 1} on a fixed thread pool. Every worker
+ * takes the next task from a shared counter until none are left, so tasks of uneven cost
+ * balance out. With a single worker the tasks run on the calling thread.
+ */
+final class ParallelTasks {
+    private ParallelTasks() {
+    }
+
+    static int workerCount(int threads, int taskCount) {
+        return Math.max(1, Math.min(threads, taskCount));
+    }
+
+    /**
+     * Runs every task on {@link #workerCount(int, int)} workers and waits for all of them. Worker
+     * {@code w} handles its tasks with {@code workerFactory.apply(w)}, so per-thread state is
+     * created once per worker. A task failing on a pool thread is rethrown as an
+     * {@link IllegalStateException} with the message {@code description + " failed"}.
+     */
+    static void run(int threads, int taskCount, IntFunction<IntConsumer> workerFactory, String description)
+            throws InterruptedException {
+        AtomicInteger nextTask = new AtomicInteger();
+        int workerCount = workerCount(threads, taskCount);
+        if (workerCount == 1) {
+            drain(workerFactory.apply(0), nextTask, taskCount);
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            List<Future<?>> futures = new ArrayList<>(workerCount);
+            for (int w = 0; w < workerCount; w++) {
+                int worker = w;
+                futures.add(executor.submit(() -> drain(workerFactory.apply(worker), nextTask, taskCount)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(description + " failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void drain(IntConsumer worker, AtomicInteger nextTask, int taskCount) {
+        int task;
+        while ((task = nextTask.getAndIncrement()) < taskCount) {
+            worker.accept(task);
+        }
+    }
+}
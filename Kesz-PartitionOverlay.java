@@ -0,0 +1,431 @@
+package org.openmetromaps.maps;
+
+import org.openmetromaps.maps.model.*;
+
+import java.util.*;
+
+/**
+ * Multi-level partition of the station graph with a customisable overlay, in the style of
+ * Customizable Route Planning.
+ * <p>
+ * The partition only depends on the stations and lines: stations are split by recursive
+ * coordinate bisection into level-1 cells of at most {@code maxCellSize} stations, and every
+ * higher level merges four cells of the level below. A station is a boundary station of its
+ * level-{@code l} cell if a segment connects it to another cell of that level. Customisation
+ * evaluates a {@link TraversalMetric} on the segments and stores, for every cell, the matrix of
+ * shortest distances between its boundary stations inside the cell. A query then runs Dijkstra
+ * on the original segments of the source and target cells only, and on the clique arcs of the
+ * highest level that separates a station from both everywhere else.
+ * <p>
+ * Like {@link NetworkCentrality}, the overlay works on the station graph, so line-change and
+ * walking costs are not part of its distances. {@link #customize(TraversalMetric)} can run
+ * while queries are answered; each query uses one complete customisation.
+ */
+public final class PartitionOverlay {
+    private static final int FANOUT_BITS = 2;
+
+    private final TraversalNetwork network;
+    private final StationGraph topology;
+    private final int levels;
+    private final int threads;
+
+    // cellOf[l][v]: a v állomás l. szintű cellája, l = 1..levels
+    private final int[][] cellOf;
+    private final int[] cellCount;
+
+    // Határállomások cellánként: [boundaryStart[l][c], boundaryStart[l][c + 1])
+    private final int[][] boundaryStart;
+    private final int[][] boundaryStation;
+    private final int[][] boundaryPosition;
+    private final int[][] cliqueOffset;
+
+    private volatile Customization customization;
+
+    private PartitionOverlay(TraversalNetwork network, StationGraph topology, int levels, int[][] cellOf,
+                             int[] cellCount, int threads) {
+        this.network = network;
+        this.topology = topology;
+        this.levels = levels;
+        this.threads = threads;
+        this.cellOf = cellOf;
+        this.cellCount = cellCount;
+        this.boundaryStart = new int[levels + 1][];
+        this.boundaryStation = new int[levels + 1][];
+        this.boundaryPosition = new int[levels + 1][];
+        this.cliqueOffset = new int[levels + 1][];
+
+        int n = topology.stationCount;
+        for (int l = 1; l <= levels; l++) {
+            int[] cell = cellOf[l];
+            boolean[] boundary = new boolean[n];
+            for (int v = 0; v < n; v++) {
+                for (int arc = topology.start[v]; arc < topology.start[v + 1]; arc++) {
+                    int w = topology.head[arc];
+                    if (cell[v] != cell[w]) {
+                        boundary[v] = true;
+                        boundary[w] = true;
+                    }
+                }
+            }
+            int[] start = new int[cellCount[l] + 1];
+            for (int v = 0; v < n; v++) {
+                if (boundary[v]) {
+                    start[cell[v] + 1]++;
+                }
+            }
+            for (int c = 0; c < cellCount[l]; c++) {
+                start[c + 1] += start[c];
+            }
+            int[] stations = new int[start[cellCount[l]]];
+            int[] position = new int[n];
+            Arrays.fill(position, -1);
+            int[] next = Arrays.copyOf(start, cellCount[l]);
+            for (int v = 0; v < n; v++) {
+                if (boundary[v]) {
+                    int slot = next[cell[v]]++;
+                    stations[slot] = v;
+                    position[v] = slot - start[cell[v]];
+                }
+            }
+            int[] offset = new int[cellCount[l] + 1];
+            for (int c = 0; c < cellCount[l]; c++) {
+                int k = start[c + 1] - start[c];
+                offset[c + 1] = offset[c] + k * k;
+            }
+            boundaryStart[l] = start;
+            boundaryStation[l] = stations;
+            boundaryPosition[l] = position;
+            cliqueOffset[l] = offset;
+        }
+    }
+
+    /**
+     * Partitions the network into level-1 cells of at most {@code maxCellSize} stations and up to
+     * {@code levels} levels, then customises it with the metric. Customisation distributes the
+     * cells of a level over {@code threads} threads.
+     */
+    public static PartitionOverlay build(TraversalNetwork network, TraversalMetric metric, int maxCellSize, int levels,
+                                         int threads) {
+        if (network == null || metric == null) {
+            throw new IllegalArgumentException("Network and metric must not be null");
+        }
+        if (maxCellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+        if (levels <= 0) {
+            throw new IllegalArgumentException("Level count must be positive");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+
+        int n = network.stationCount();
+        int depth = 0;
+        while (((long) n + (1L << depth) - 1) >> depth > maxCellSize) {
+            depth++;
+        }
+        // A legfelső szinten is legalább két cella maradjon
+        int levelCount = Math.min(levels, (depth - 1) / FANOUT_BITS + 1);
+
+        int[] leaf = new int[n];
+        Integer[] order = new Integer[n];
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int v = 0; v < n; v++) {
+            Coordinate location = network.getStation(v).getLocation();
+            order[v] = v;
+            x[v] = location.getLongitude() * Math.cos(Math.toRadians(location.getLatitude()));
+            y[v] = location.getLatitude();
+        }
+        bisect(order, 0, n, 0, depth, 0, x, y, leaf);
+
+        int[][] cellOf = new int[levelCount + 1][];
+        int[] cellCount = new int[levelCount + 1];
+        for (int l = 1; l <= levelCount; l++) {
+            int shift = (l - 1) * FANOUT_BITS;
+            cellOf[l] = new int[n];
+            for (int v = 0; v < n; v++) {
+                cellOf[l][v] = leaf[v] >> shift;
+            }
+            cellCount[l] = Math.max(1, (1 << depth) >> shift);
+        }
+
+        StationGraph topology = new StationGraph(network,
+                network.weights(MapTraversal.MapTraversalLimitType.STOP_LIMIT).arcCost);
+        PartitionOverlay overlay = new PartitionOverlay(network, topology, levelCount, cellOf, cellCount, threads);
+        overlay.customize(metric);
+        return overlay;
+    }
+
+    private static void bisect(Integer[] order, int from, int to, int level, int depth, int prefix,
+                               double[] x, double[] y, int[] leaf) {
+        if (level == depth) {
+            for (int i = from; i < to; i++) {
+                leaf[order[i]] = prefix;
+            }
+            return;
+        }
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            minX = Math.min(minX, x[order[i]]);
+            maxX = Math.max(maxX, x[order[i]]);
+            minY = Math.min(minY, y[order[i]]);
+            maxY = Math.max(maxY, y[order[i]]);
+        }
+        double[] axis = maxX - minX >= maxY - minY ? x : y;
+        Arrays.sort(order, from, to, Comparator.comparingDouble(v -> axis[v]));
+        int middle = (from + to) >>> 1;
+        bisect(order, from, middle, level + 1, depth, prefix * 2, x, y, leaf);
+        bisect(order, middle, to, level + 1, depth, prefix * 2 + 1, x, y, leaf);
+    }
+
+    /**
+     * Recomputes segment weights and clique matrices for the metric. The partition is kept, so
+     * this is the only work needed after segment times change. The ride costs are evaluated
+     * again on every call and are not stored in the network's weight cache, so the same metric
+     * may be passed again after its costs change.
+     */
+    public void customize(TraversalMetric metric) {
+        if (metric == null) {
+            throw new IllegalArgumentException("Metric must not be null");
+        }
+        // Csak a menetköltségek kellenek, a hálózat gyorsítótárát nem töltjük minden zavarral
+        Stop[] stops = network.stops;
+        double[] arcCost = new double[network.arcHead.length];
+        for (int u = 0; u < stops.length; u++) {
+            for (int arc = network.arcStart[u]; arc < network.arcStart[u + 1]; arc++) {
+                arcCost[arc] = TraversalNetwork.Weights.checkCost(metric.rideCost(stops[u],
+                        stops[network.arcHead[arc]], network.arcMinutes[arc]));
+            }
+        }
+        double[] weight = new StationGraph(network, arcCost).weight;
+        double[][] clique = new double[levels + 1][];
+        // A szintek egymásra épülnek, egy szinten belül a cellák függetlenek
+        for (int l = 1; l <= levels; l++) {
+            clique[l] = new double[cliqueOffset[l][cellCount[l]]];
+            customizeLevel(weight, clique, l);
+        }
+        this.customization = new Customization(weight, clique);
+    }
+
+    private void customizeLevel(double[] weight, double[][] clique, int l) {
+        try {
+            ParallelTasks.run(threads, cellCount[l], w -> {
+                Search search = new Search(topology.stationCount);
+                return c -> {
+                    int first = boundaryStart[l][c];
+                    int k = boundaryStart[l][c + 1] - first;
+                    for (int i = 0; i < k; i++) {
+                        search.cellDistances(this, weight, clique, l, c, boundaryStation[l][first + i]);
+                        int row = cliqueOffset[l][c] + i * k;
+                        for (int j = 0; j < k; j++) {
+                            clique[l][row + j] = search.distance[boundaryStation[l][first + j]];
+                        }
+                        search.reset();
+                    }
+                };
+            }, "Customisation");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Customisation was interrupted", e);
+        }
+    }
+
+    /**
+     * Cost of the cheapest route between two stations under the current customisation, or
+     * infinity if there is none.
+     */
+    public double distance(Station from, Station to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Stations must not be null");
+        }
+        return query(network.indexOf(from), network.indexOf(to)).distance;
+    }
+
+    QueryResult query(int source, int target) {
+        Customization current = customization;
+        Search search = new Search(topology.stationCount);
+        double result = search.overlayDistance(this, current, source, target);
+        return new QueryResult(result, search.settled);
+    }
+
+    /**
+     * Highest level on which {@code v} is in a different cell than both the source and the
+     * target, or 0 if it shares a level-1 cell with one of them.
+     */
+    private int queryLevel(int v, int source, int target) {
+        for (int l = levels; l >= 1; l--) {
+            int cell = cellOf[l][v];
+            if (cell != cellOf[l][source] && cell != cellOf[l][target]) {
+                return l;
+            }
+        }
+        return 0;
+    }
+
+    public TraversalNetwork getNetwork() {
+        return network;
+    }
+
+    public int getLevelCount() {
+        return levels;
+    }
+
+    public int getCellCount(int level) {
+        return cellCount[level];
+    }
+
+    public int getBoundaryStationCount(int level) {
+        return boundaryStation[level].length;
+    }
+
+    private static final class Customization {
+        final double[] weight;
+        final double[][] clique;
+
+        Customization(double[] weight, double[][] clique) {
+            this.weight = weight;
+            this.clique = clique;
+        }
+    }
+
+    static final class QueryResult {
+        final double distance;
+        final int settled;
+
+        QueryResult(double distance, int settled) {
+            this.distance = distance;
+            this.settled = settled;
+        }
+    }
+
+    /**
+     * Dijkstra state over station indices, reset by the list of touched stations.
+     */
+    private static final class Search {
+        final double[] distance;
+        // A címke egy klikkélből származik, így ugyanannak a cellának a klikkjét nem kell újra bejárni
+        final boolean[] viaClique;
+        final int[] touched;
+        int touchedCount;
+        int settled;
+        final LabelHeap heap;
+
+        Search(int n) {
+            this.distance = new double[n];
+            Arrays.fill(distance, Double.POSITIVE_INFINITY);
+            this.viaClique = new boolean[n];
+            this.touched = new int[n];
+            this.heap = new LabelHeap(n);
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                distance[touched[i]] = Double.POSITIVE_INFINITY;
+                viaClique[touched[i]] = false;
+            }
+            touchedCount = 0;
+            heap.clear();
+        }
+
+        private void relax(int v, double label, boolean clique) {
+            if (label < distance[v]) {
+                if (distance[v] == Double.POSITIVE_INFINITY) {
+                    touched[touchedCount++] = v;
+                }
+                distance[v] = label;
+                viaClique[v] = clique;
+                heap.push(v, label);
+            }
+        }
+
+        /**
+         * Distances from a boundary station to the stations of its level-{@code l} cell, using
+         * only routes inside the cell: segments on level 1, the cliques of the subcells and the
+         * segments between them above.
+         */
+        void cellDistances(PartitionOverlay overlay, double[] weight, double[][] clique, int l, int c, int source) {
+            StationGraph graph = overlay.topology;
+            int[] cell = overlay.cellOf[l];
+            int[] subcell = l > 1 ? overlay.cellOf[l - 1] : null;
+            relax(source, 0, false);
+            while (!heap.isEmpty()) {
+                int v = heap.peekNode();
+                double d = heap.peekLabel();
+                heap.pop();
+                if (d > distance[v]) {
+                    continue;
+                }
+                if (subcell == null) {
+                    for (int arc = graph.start[v]; arc < graph.start[v + 1]; arc++) {
+                        int w = graph.head[arc];
+                        if (cell[w] == c) {
+                            relax(w, d + weight[arc], false);
+                        }
+                    }
+                    continue;
+                }
+                int sc = subcell[v];
+                if (!viaClique[v]) {
+                    relaxClique(overlay, clique, l - 1, sc, v, d);
+                }
+                for (int arc = graph.start[v]; arc < graph.start[v + 1]; arc++) {
+                    int w = graph.head[arc];
+                    if (cell[w] == c && subcell[w] != sc) {
+                        relax(w, d + weight[arc], false);
+                    }
+                }
+            }
+        }
+
+        private void relaxClique(PartitionOverlay overlay, double[][] clique, int l, int c, int v, double d) {
+            int first = overlay.boundaryStart[l][c];
+            int k = overlay.boundaryStart[l][c + 1] - first;
+            int row = overlay.cliqueOffset[l][c] + overlay.boundaryPosition[l][v] * k;
+            for (int j = 0; j < k; j++) {
+                relax(overlay.boundaryStation[l][first + j], d + clique[l][row + j], true);
+            }
+        }
+
+        double overlayDistance(PartitionOverlay overlay, Customization customization, int source, int target) {
+            StationGraph graph = overlay.topology;
+            double[] weight = customization.weight;
+            relax(source, 0, false);
+            while (!heap.isEmpty()) {
+                int v = heap.peekNode();
+                double d = heap.peekLabel();
+                heap.pop();
+                if (d > distance[v]) {
+                    continue;
+                }
+                settled++;
+                if (v == target) {
+                    return d;
+                }
+                int l = overlay.queryLevel(v, source, target);
+                if (l == 0) {
+                    // A forrás és a cél cellájában az eredeti szakaszokon haladunk
+                    for (int arc = graph.start[v]; arc < graph.start[v + 1]; arc++) {
+                        relax(graph.head[arc], d + weight[arc], false);
+                    }
+                    continue;
+                }
+                // Máshol a cella klikkjén belül, és csak a cellát elhagyó szakaszokon
+                int[] cell = overlay.cellOf[l];
+                if (!viaClique[v]) {
+                    relaxClique(overlay, customization.clique, l, cell[v], v, d);
+                }
+                for (int arc = graph.start[v]; arc < graph.start[v + 1]; arc++) {
+                    int w = graph.head[arc];
+                    if (cell[w] != cell[v]) {
+                        relax(w, d + weight[arc], false);
+                    }
+                }
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package org.openmetromaps.maps;
+
+import org.openmetromaps.maps.model.*;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test that replays a recorded log of traversal queries and reports throughput, latency
+ * percentiles and allocation per query.
+ * <p>
+ * A log has one query per line: the id of the source station, the
+ * {@link MapTraversal.MapTraversalLimitType} and the limit, separated by whitespace or commas;
+ * empty lines and lines starting with {@code #} are ignored. The closed-loop replay runs the
+ * queries back to back on a fixed number of workers. The open-loop replay issues them at a fixed
+ * rate regardless of how fast they complete, and measures latency from the time a query was due,
+ * so time spent waiting for a free worker is included. Queries run either through
+ * {@link MapTraversal#traverseMap(ModelData, Station, MapTraversal.MapTraversalLimitType, int)},
+ * which searches the model directly, or on a network compiled once up front.
+ * <p>
+ * {@link #generateNetwork(int, int, long)} and {@link #generateLog(ModelData, int, long)} produce
+ * a synthetic city network and a skewed query mix, so the harness also runs without recorded
+ * data; see {@link #main(String[])} for the options.
+ */
+public final class QueryLogReplay {
+    private static final double GRID_SPACING_DEGREES = 0.006;
+
+    private QueryLogReplay() {
+    }
+
+    /**
+     * One recorded traversal call.
+     */
+    public static final class Query {
+        private final Station source;
+        private final MapTraversal.MapTraversalLimitType limitType;
+        private final int limit;
+
+        public Query(Station source, MapTraversal.MapTraversalLimitType limitType, int limit) {
+            if (source == null || limitType == null) {
+                throw new IllegalArgumentException("Source station and limit type must not be null");
+            }
+            if (limit < 0) {
+                throw new IllegalArgumentException("Limit must be non-negative");
+            }
+            this.source = source;
+            this.limitType = limitType;
+            this.limit = limit;
+        }
+
+        public Station getSource() {
+            return source;
+        }
+
+        public MapTraversal.MapTraversalLimitType getLimitType() {
+            return limitType;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+    }
+
+    public static List<Query> readLog(Path file, ModelData model) throws IOException {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return readLog(in, model);
+        }
+    }
+
+    /**
+     * Parses a query log; source ids are resolved against the stations of the model.
+     */
+    public static List<Query> readLog(Reader in, ModelData model) throws IOException {
+        if (in == null || model == null) {
+            throw new IllegalArgumentException("Input and model must not be null");
+        }
+        Map<Integer, Station> stationById = new HashMap<>();
+        for (Station station : model.stations) {
+            stationById.put(station.getId(), station);
+        }
+
+        List<Query> queries = new ArrayList<>();
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("[,\\s]+");
+            if (fields.length != 3) {
+                throw new IOException("Line " + lineNumber + ": expected source id, limit type and limit");
+            }
+            try {
+                Station source = stationById.get(Integer.parseInt(fields[0]));
+                if (source == null) {
+                    throw new IOException("Line " + lineNumber + ": unknown station id " + fields[0]);
+                }
+                queries.add(new Query(source, MapTraversal.MapTraversalLimitType.valueOf(fields[1]),
+                        Integer.parseInt(fields[2])));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return queries;
+    }
+
+    public static void writeLog(List<Query> queries, Writer out) throws IOException {
+        BufferedWriter writer = out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out);
+        writer.write("# source limitType limit");
+        writer.newLine();
+        for (Query query : queries) {
+            writer.write(query.getSource().getId() + " " + query.getLimitType() + " " + query.getLimit());
+            writer.newLine();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Synthetic city network: every line is a random walk of up to {@code stopsPerLine} stops over
+     * a square grid of candidate positions about 600 m apart, and lines share the stations at the
+     * positions they have in common. Stations get the ids {@code 0..n-1}, lines the ids after them.
+     */
+    public static ModelData generateNetwork(int lineCount, int stopsPerLine, long seed) {
+        if (lineCount <= 0 || stopsPerLine < 2) {
+            throw new IllegalArgumentException("At least one line with two stops is needed");
+        }
+        Random random = new Random(seed);
+        int side = Math.max(2, (int) Math.ceil(Math.sqrt(lineCount * (double) stopsPerLine / 2)));
+        int[][] walks = new int[lineCount][];
+        boolean[] used = new boolean[side * side];
+        int[][] directions = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        for (int l = 0; l < lineCount; l++) {
+            int[] walk = new int[stopsPerLine];
+            Set<Integer> visited = new HashSet<>();
+            int row = random.nextInt(side);
+            int col = random.nextInt(side);
+            int[] heading = directions[random.nextInt(4)];
+            int length = 0;
+            while (length < stopsPerLine) {
+                int position = row * side + col;
+                visited.add(position);
+                used[position] = true;
+                walk[length++] = position;
+                // Többnyire egyenesen halad, néha kanyarodik; zsákutcában a vonal véget ér
+                int[] next = null;
+                for (int attempt = 0; attempt < 8 && next == null; attempt++) {
+                    int[] candidate = attempt == 0 && random.nextInt(4) != 0 ? heading : directions[random.nextInt(4)];
+                    int r = row + candidate[0];
+                    int c = col + candidate[1];
+                    if (r >= 0 && r < side && c >= 0 && c < side && !visited.contains(r * side + c)) {
+                        next = candidate;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                heading = next;
+                row += next[0];
+                col += next[1];
+            }
+            walks[l] = Arrays.copyOf(walk, length);
+        }
+
+        List<Station> stations = new ArrayList<>();
+        Station[] stationAt = new Station[side * side];
+        for (int position = 0; position < used.length; position++) {
+            if (used[position]) {
+                double lat = 47.40 + (position / side + random.nextDouble() * 0.4) * GRID_SPACING_DEGREES;
+                double lon = 18.95 + (position % side + random.nextDouble() * 0.4) * GRID_SPACING_DEGREES * 1.5;
+                stationAt[position] = new Station(stations.size(), "Station " + stations.size(),
+                        new Coordinate(lat, lon), new ArrayList<>());
+                stations.add(stationAt[position]);
+            }
+        }
+        List<Line> lines = new ArrayList<>();
+        for (int l = 0; l < lineCount; l++) {
+            Line line = new Line(stations.size() + l, "L" + (l + 1), String.format("#%06X", random.nextInt(1 << 24)),
+                    false, new ArrayList<>());
+            for (int position : walks[l]) {
+                Stop stop = new Stop(stationAt[position], line);
+                stationAt[position].getStops().add(stop);
+                line.getStops().add(stop);
+            }
+            lines.add(line);
+        }
+        return new ModelData(lines, stations);
+    }
+
+    /**
+     * Synthetic query mix: a few popular stations are the source of most queries, half of the
+     * queries are time limited (5-45 minutes), the rest stop (1-15) or transfer (0-3) limited.
+     */
+    public static List<Query> generateLog(ModelData model, int count, long seed) {
+        if (model == null || model.stations.isEmpty()) {
+            throw new IllegalArgumentException("Model must have stations");
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("Query count must be non-negative");
+        }
+        Random random = new Random(seed);
+        List<Station> byPopularity = new ArrayList<>(model.stations);
+        Collections.shuffle(byPopularity, random);
+        List<Query> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Station source = byPopularity.get((int) (byPopularity.size() * Math.pow(random.nextDouble(), 3)));
+            int kind = random.nextInt(10);
+            if (kind < 5) {
+                queries.add(new Query(source, MapTraversal.MapTraversalLimitType.TIME_LIMIT, 5 + random.nextInt(41)));
+            } else if (kind < 8) {
+                queries.add(new Query(source, MapTraversal.MapTraversalLimitType.STOP_LIMIT, 1 + random.nextInt(15)));
+            } else {
+                queries.add(new Query(source, MapTraversal.MapTraversalLimitType.TRANSFER_LIMIT, random.nextInt(4)));
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Runs the queries back to back on {@code workers} threads. With a non-null {@code network}
+     * the queries run on it, otherwise every query searches the model through {@code traverseMap}.
+     */
+    public static Report replayClosedLoop(ModelData model, TraversalNetwork network, List<Query> queries, int workers) {
+        checkArguments(model, queries, workers);
+        Recorder recorder = new Recorder(queries.size());
+        long start = System.nanoTime();
+        try {
+            ParallelTasks.run(workers, queries.size(),
+                    w -> i -> recorder.execute(model, network, queries.get(i), i, System.nanoTime()), "Replay");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Replay was interrupted", e);
+        }
+        return recorder.report("closed loop, " + workers + " workers", System.nanoTime() - start);
+    }
+
+    /**
+     * Issues the queries at {@code queriesPerSecond}, independent of their completion, and runs
+     * them on {@code workers} threads. Latency is measured from the time each query was due.
+     */
+    public static Report replayOpenLoop(ModelData model, TraversalNetwork network, List<Query> queries,
+                                        double queriesPerSecond, int workers) {
+        checkArguments(model, queries, workers);
+        if (!(queriesPerSecond > 0) || Double.isInfinite(queriesPerSecond)) {
+            throw new IllegalArgumentException("Rate must be a positive finite number");
+        }
+        Recorder recorder = new Recorder(queries.size());
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>(queries.size());
+            for (int i = 0; i < queries.size(); i++) {
+                long due = start + (long) (i * 1e9 / queriesPerSecond);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                int index = i;
+                futures.add(executor.submit(() -> recorder.execute(model, network, queries.get(index), index, due)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Replay was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replay failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return recorder.report(String.format(Locale.ROOT, "open loop, %.0f queries/s, %d workers",
+                queriesPerSecond, workers), System.nanoTime() - start);
+    }
+
+    private static void checkArguments(ModelData model, List<Query> queries, int workers) {
+        if (model == null || queries == null) {
+            throw new IllegalArgumentException("Model and queries must not be null");
+        }
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Worker count must be positive");
+        }
+    }
+
+    /**
+     * Per-query latency and allocation, written by the worker that ran the query.
+     */
+    private static final class Recorder {
+        private final long[] latencyNanos;
+        private final long[] allocatedBytes;
+        private final AtomicInteger errors = new AtomicInteger();
+        private final AtomicLong resultStations = new AtomicLong();
+        private final com.sun.management.ThreadMXBean threads;
+
+        Recorder(int count) {
+            this.latencyNanos = new long[count];
+            this.allocatedBytes = new long[count];
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            com.sun.management.ThreadMXBean allocationBean = null;
+            if (bean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+                allocationBean = (com.sun.management.ThreadMXBean) bean;
+                allocationBean.setThreadAllocatedMemoryEnabled(true);
+            }
+            this.threads = allocationBean;
+        }
+
+        void execute(ModelData model, TraversalNetwork network, Query query, int index, long startNanos) {
+            long threadId = Thread.currentThread().getId();
+            long allocatedBefore = threads == null ? 0 : threads.getThreadAllocatedBytes(threadId);
+            try {
+                List<Station> result = network == null
+                        ? MapTraversal.traverseMap(model, query.getSource(), query.getLimitType(), query.getLimit())
+                        : MapTraversal.traverseNetwork(network, query.getSource(), query.getLimitType(), query.getLimit());
+                resultStations.addAndGet(result.size());
+            } catch (RuntimeException e) {
+                errors.incrementAndGet();
+            }
+            latencyNanos[index] = System.nanoTime() - startNanos;
+            allocatedBytes[index] = threads == null ? -1 : threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        }
+
+        Report report(String mode, long elapsedNanos) {
+            long[] sorted = latencyNanos.clone();
+            Arrays.sort(sorted);
+            double allocation = Double.NaN;
+            if (threads != null && allocatedBytes.length > 0) {
+                long sum = 0;
+                for (long bytes : allocatedBytes) {
+                    sum += bytes;
+                }
+                allocation = (double) sum / allocatedBytes.length;
+            }
+            return new Report(mode, sorted, elapsedNanos, errors.get(), resultStations.get(), allocation);
+        }
+    }
+
+    public static final class Report {
+        private final String mode;
+        private final long[] sortedLatencyNanos;
+        private final long elapsedNanos;
+        private final int errorCount;
+        private final long resultStationCount;
+        private final double allocatedBytesPerQuery;
+
+        private Report(String mode, long[] sortedLatencyNanos, long elapsedNanos, int errorCount,
+                       long resultStationCount, double allocatedBytesPerQuery) {
+            this.mode = mode;
+            this.sortedLatencyNanos = sortedLatencyNanos;
+            this.elapsedNanos = elapsedNanos;
+            this.errorCount = errorCount;
+            this.resultStationCount = resultStationCount;
+            this.allocatedBytesPerQuery = allocatedBytesPerQuery;
+        }
+
+        public int getQueryCount() {
+            return sortedLatencyNanos.length;
+        }
+
+        public int getErrorCount() {
+            return errorCount;
+        }
+
+        /**
+         * Total number of stations in all results, which also keeps the results from being
+         * optimised away.
+         */
+        public long getResultStationCount() {
+            return resultStationCount;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0.0 : sortedLatencyNanos.length / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * Latency at the given quantile ({@code 0 < quantile <= 1}) by the nearest-rank method.
+         */
+        public long getLatencyNanos(double quantile) {
+            if (!(quantile > 0 && quantile <= 1)) {
+                throw new IllegalArgumentException("Quantile must be in (0, 1]");
+            }
+            if (sortedLatencyNanos.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(quantile * sortedLatencyNanos.length);
+            return sortedLatencyNanos[Math.max(0, rank - 1)];
+        }
+
+        /**
+         * Mean bytes allocated by the thread running a query, or {@code NaN} if the JVM does not
+         * report thread allocation.
+         */
+        public double getAllocatedBytesPerQuery() {
+            return allocatedBytesPerQuery;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%s: %d queries (%d errors) in %.2f s, %.1f queries/s, latency p50 %.3f ms, p99 %.3f ms, "
+                            + "p999 %.3f ms, max %.3f ms, %.0f bytes allocated per query",
+                    mode, getQueryCount(), errorCount, elapsedNanos / 1e9, getThroughput(),
+                    getLatencyNanos(0.5) / 1e6, getLatencyNanos(0.99) / 1e6, getLatencyNanos(0.999) / 1e6,
+                    getLatencyNanos(1.0) / 1e6, allocatedBytesPerQuery);
+        }
+    }
+
+    /**
+     * Options, all optional:
+     * <pre>
+     * --model file.xml     OpenMetroMaps network (default: synthetic, see --lines, --stops)
+     * --log queries.log    query log (default: synthetic, see --queries)
+     * --write-log file     writes the queries used to a log file
+     * --lines 60 --stops 25 --queries 20000 --seed 1
+     * --rate 500           open loop at this many queries per second (default: closed loop)
+     * --workers 4          worker threads
+     * --warmup 2000        queries run before measuring
+     * --compiled           run on a compiled network instead of traverseMap
+     * </pre>
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            boolean flag = i + 1 == args.length || args[i + 1].startsWith("--");
+            options.put(args[i].substring(2), flag ? "true" : args[++i]);
+        }
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        int workers = Integer.parseInt(options.getOrDefault("workers", "4"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "2000"));
+
+        ModelData model = options.containsKey("model")
+                ? OpenMetroMapsImporter.read(Paths.get(options.get("model")), workers, null).getModel()
+                : generateNetwork(Integer.parseInt(options.getOrDefault("lines", "60")),
+                Integer.parseInt(options.getOrDefault("stops", "25")), seed);
+        List<Query> queries = options.containsKey("log")
+                ? readLog(Paths.get(options.get("log")), model)
+                : generateLog(model, Integer.parseInt(options.getOrDefault("queries", "20000")), seed);
+        if (options.containsKey("write-log")) {
+            try (Writer out = Files.newBufferedWriter(Paths.get(options.get("write-log")), StandardCharsets.UTF_8)) {
+                writeLog(queries, out);
+            }
+        }
+        TraversalNetwork network = options.containsKey("compiled") ? TraversalNetwork.compile(model) : null;
+        System.out.println(model.stations.size() + " stations, " + model.lines.size() + " lines, "
+                + queries.size() + " queries" + (network != null ? ", compiled network" : ", traverseMap"));
+
+        replayClosedLoop(model, network, queries.subList(0, Math.min(warmup, queries.size())), workers);
+        Report report = options.containsKey("rate")
+                ? replayOpenLoop(model, network, queries, Double.parseDouble(options.get("rate")), workers)
+                : replayClosedLoop(model, network, queries, workers);
+        System.out.println(report);
+    }
+}
@@ -0,0 +1,82 @@
+package org.openmetromaps.maps;
+
+import org.openmetromaps.maps.model.*;
+
+import java.util.*;
+
+/**
+ * Earliest arrival at every station for each departure of a departure window, as computed by
+ * {@link ConnectionScan#profile(Station, int, int, int, int)}.
+ * <p>
+ * Arrivals are stored row by row: the arrival at station index {@code s} for departure
+ * {@code k} is at {@code k * stationCount + s}, {@link Integer#MAX_VALUE} if unreachable.
+ */
+public final class ReachabilityProfile {
+    private final TraversalNetwork network;
+    private final int windowStart;
+    private final int stepSeconds;
+    private final int departureCount;
+    private final int maxDuration;
+    private final int[] arrivals;
+
+    ReachabilityProfile(TraversalNetwork network, int windowStart, int stepSeconds, int departureCount,
+                        int maxDuration, int[] arrivals) {
+        this.network = network;
+        this.windowStart = windowStart;
+        this.stepSeconds = stepSeconds;
+        this.departureCount = departureCount;
+        this.maxDuration = maxDuration;
+        this.arrivals = arrivals;
+    }
+
+    public int getDepartureCount() {
+        return departureCount;
+    }
+
+    public int getDepartureTime(int departure) {
+        checkDeparture(departure);
+        return windowStart + departure * stepSeconds;
+    }
+
+    public int getArrival(Station station, int departure) {
+        checkDeparture(departure);
+        return arrivals[departure * network.stationCount() + network.indexOf(station)];
+    }
+
+    /**
+     * Arrival times at the station for every departure of the window, earliest departure first.
+     */
+    public int[] getEarliestArrivalFunction(Station station) {
+        int stationCount = network.stationCount();
+        int index = network.indexOf(station);
+        int[] result = new int[departureCount];
+        for (int k = 0; k < departureCount; k++) {
+            result[k] = arrivals[k * stationCount + index];
+        }
+        return result;
+    }
+
+    /**
+     * Stations reachable within the profile's maximum duration when departing at the given
+     * departure of the window.
+     */
+    public List<Station> reachableStations(int departure) {
+        int departureTime = getDepartureTime(departure);
+        int stationCount = network.stationCount();
+        int row = departure * stationCount;
+        List<Station> result = new ArrayList<>();
+        for (int s = 0; s < stationCount; s++) {
+            int arrival = arrivals[row + s];
+            if (arrival != ConnectionScan.UNREACHED && arrival - departureTime <= maxDuration) {
+                result.add(network.getStation(s));
+            }
+        }
+        return result;
+    }
+
+    private void checkDeparture(int departure) {
+        if (departure < 0 || departure >= departureCount) {
+            throw new IndexOutOfBoundsException("Departure index out of range: " + departure);
+        }
+    }
+}
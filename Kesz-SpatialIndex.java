@@ -0,0 +1,337 @@
+package org.openmetromaps.maps;
+
+import org.openmetromaps.maps.model.*;
+
+import java.util.*;
+
+/**
+ * Uniform grid over the station coordinates of a {@link TraversalNetwork}.
+ * <p>
+ * Coordinates are projected to metres with a local equirectangular projection around the mean
+ * latitude of the network, which is accurate at city scale. Stations are sorted by grid cell, so
+ * the stations of a cell and their projected coordinates are contiguous in memory; only the
+ * occupied cells are stored and looked up by binary search.
+ */
+public final class SpatialIndex {
+    private static final double METERS_PER_DEGREE_LAT = 110574.0;
+    private static final double METERS_PER_DEGREE_LON = 111320.0;
+
+    private final TraversalNetwork network;
+    private final double cellSize;
+    private final double metersPerDegreeLon;
+
+    private final long[] cellKeys;
+    private final int[] cellStart;
+    private final int[] stationOf;
+    private final double[] x;
+    private final double[] y;
+    private final long minCellX;
+    private final long maxCellX;
+    private final long minCellY;
+    private final long maxCellY;
+
+    public SpatialIndex(TraversalNetwork network, double cellSizeMeters) {
+        if (network == null) {
+            throw new IllegalArgumentException("Network must not be null");
+        }
+        if (!(cellSizeMeters > 0) || Double.isInfinite(cellSizeMeters)) {
+            throw new IllegalArgumentException("Cell size must be a positive finite number");
+        }
+        this.network = network;
+        this.cellSize = cellSizeMeters;
+
+        int n = network.stationCount();
+        double latitudeSum = 0;
+        for (int s = 0; s < n; s++) {
+            latitudeSum += network.getStation(s).getLocation().getLatitude();
+        }
+        this.metersPerDegreeLon = METERS_PER_DEGREE_LON * Math.cos(Math.toRadians(n == 0 ? 0 : latitudeSum / n));
+
+        long[] stationKeys = new long[n];
+        for (int s = 0; s < n; s++) {
+            Coordinate location = network.getStation(s).getLocation();
+            stationKeys[s] = cellKey(cell(projectX(location)), cell(projectY(location)));
+        }
+
+        // Foglalt cellák rendezve, majd az állomások cellánként, indexük sorrendjében
+        long[] sortedKeys = stationKeys.clone();
+        Arrays.sort(sortedKeys);
+        int cells = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || sortedKeys[i] != sortedKeys[i - 1]) {
+                sortedKeys[cells++] = sortedKeys[i];
+            }
+        }
+        this.cellKeys = Arrays.copyOf(sortedKeys, cells);
+        this.cellStart = new int[cells + 1];
+        int[] stationCell = new int[n];
+        for (int s = 0; s < n; s++) {
+            stationCell[s] = Arrays.binarySearch(cellKeys, stationKeys[s]);
+            cellStart[stationCell[s] + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+
+        this.stationOf = new int[n];
+        this.x = new double[n];
+        this.y = new double[n];
+        int[] next = Arrays.copyOf(cellStart, cells);
+        for (int s = 0; s < n; s++) {
+            int i = next[stationCell[s]]++;
+            Coordinate location = network.getStation(s).getLocation();
+            stationOf[i] = s;
+            x[i] = projectX(location);
+            y[i] = projectY(location);
+        }
+
+        long minX = Long.MAX_VALUE;
+        long maxX = Long.MIN_VALUE;
+        long minY = Long.MAX_VALUE;
+        long maxY = Long.MIN_VALUE;
+        for (long key : cellKeys) {
+            minX = Math.min(minX, cellX(key));
+            maxX = Math.max(maxX, cellX(key));
+            minY = Math.min(minY, cellY(key));
+            maxY = Math.max(maxY, cellY(key));
+        }
+        this.minCellX = minX;
+        this.maxCellX = maxX;
+        this.minCellY = minY;
+        this.maxCellY = maxY;
+    }
+
+    public TraversalNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * Distance in metres between two points in the projection of this index.
+     */
+    public double distanceMeters(Coordinate from, Coordinate to) {
+        double dx = projectX(from) - projectX(to);
+        double dy = projectY(from) - projectY(to);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    public List<Station> withinRadius(Coordinate point, double radiusMeters) {
+        return toStations(stationsWithin(point, radiusMeters));
+    }
+
+    /**
+     * The {@code k} stations closest to the point, closest first.
+     */
+    public List<Station> nearest(Coordinate point, int k) {
+        if (point == null) {
+            throw new IllegalArgumentException("Point must not be null");
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("k must be non-negative");
+        }
+        k = Math.min(k, stationOf.length);
+        if (k == 0) {
+            return new ArrayList<>();
+        }
+
+        double px = projectX(point);
+        double py = projectY(point);
+        long cx = cell(px);
+        long cy = cell(py);
+
+        // Max-heap a k legjobb jelöltre (a gyökér a legtávolabbi)
+        double[] bestDistance = new double[k];
+        int[] bestPosition = new int[k];
+        int found = 0;
+        for (long ring = 0; ; ring++) {
+            for (long gx = cx - ring; gx <= cx + ring; gx++) {
+                // Csak a gyűrű peremén lévő cellák
+                long step = Math.abs(gx - cx) == ring ? 1 : Math.max(2 * ring, 1);
+                for (long gy = cy - ring; gy <= cy + ring; gy += step) {
+                    int c = findCell(cellKey(gx, gy));
+                    if (c < 0) {
+                        continue;
+                    }
+                    for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                        double dx = x[i] - px;
+                        double dy = y[i] - py;
+                        double d = dx * dx + dy * dy;
+                        if (found < k) {
+                            siftUp(bestDistance, bestPosition, found++, d, i);
+                        } else if (d < bestDistance[0]) {
+                            siftDown(bestDistance, bestPosition, k, d, i);
+                        }
+                    }
+                }
+            }
+            // A következő gyűrű minden pontja legalább ring * cellSize távolságra van
+            double ringDistance = ring * cellSize;
+            if (found == k && bestDistance[0] <= ringDistance * ringDistance) {
+                break;
+            }
+            if (cx - ring <= minCellX && cx + ring >= maxCellX && cy - ring <= minCellY && cy + ring >= maxCellY) {
+                break;
+            }
+        }
+
+        Integer[] ranked = new Integer[found];
+        for (int i = 0; i < found; i++) {
+            ranked[i] = i;
+        }
+        Arrays.sort(ranked, Comparator.comparingDouble(i -> bestDistance[i]));
+        List<Station> result = new ArrayList<>(found);
+        for (int i : ranked) {
+            result.add(network.getStation(stationOf[bestPosition[i]]));
+        }
+        return result;
+    }
+
+    /**
+     * Network station indices within the radius of the point, in grid order.
+     */
+    int[] stationsWithin(Coordinate point, double radiusMeters) {
+        if (point == null) {
+            throw new IllegalArgumentException("Point must not be null");
+        }
+        if (!(radiusMeters >= 0)) {
+            throw new IllegalArgumentException("Radius must be non-negative");
+        }
+        return collectWithin(projectX(point), projectY(point), radiusMeters);
+    }
+
+    /**
+     * Calls the consumer once for every unordered pair of distinct stations at most
+     * {@code radiusMeters} apart. Only the grid cells around each station are inspected.
+     */
+    void forEachPairWithin(double radiusMeters, PairConsumer consumer) {
+        if (!(radiusMeters >= 0)) {
+            throw new IllegalArgumentException("Radius must be non-negative");
+        }
+        double radiusSquared = radiusMeters * radiusMeters;
+        long reach = (long) Math.ceil(radiusMeters / cellSize);
+        for (int c = 0; c < cellKeys.length; c++) {
+            long cx = cellX(cellKeys[c]);
+            long cy = cellY(cellKeys[c]);
+            for (long gx = cx - reach; gx <= cx + reach; gx++) {
+                for (long gy = cy - reach; gy <= cy + reach; gy++) {
+                    int other = findCell(cellKey(gx, gy));
+                    if (other < c) {
+                        continue;
+                    }
+                    for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                        int from = other == c ? i + 1 : cellStart[other];
+                        for (int j = from; j < cellStart[other + 1]; j++) {
+                            double dx = x[i] - x[j];
+                            double dy = y[i] - y[j];
+                            double d = dx * dx + dy * dy;
+                            if (d <= radiusSquared) {
+                                consumer.accept(stationOf[i], stationOf[j], Math.sqrt(d));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    interface PairConsumer {
+        void accept(int station, int other, double distanceMeters);
+    }
+
+    private int[] collectWithin(double px, double py, double radiusMeters) {
+        double radiusSquared = radiusMeters * radiusMeters;
+        long minX = cell(px - radiusMeters);
+        long maxX = cell(px + radiusMeters);
+        long minY = cell(py - radiusMeters);
+        long maxY = cell(py + radiusMeters);
+        int[] result = new int[8];
+        int count = 0;
+        for (long gx = minX; gx <= maxX; gx++) {
+            for (long gy = minY; gy <= maxY; gy++) {
+                int c = findCell(cellKey(gx, gy));
+                if (c < 0) {
+                    continue;
+                }
+                for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                    double dx = x[i] - px;
+                    double dy = y[i] - py;
+                    if (dx * dx + dy * dy <= radiusSquared) {
+                        if (count == result.length) {
+                            result = Arrays.copyOf(result, count * 2);
+                        }
+                        result[count++] = stationOf[i];
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private List<Station> toStations(int[] indices) {
+        List<Station> result = new ArrayList<>(indices.length);
+        for (int index : indices) {
+            result.add(network.getStation(index));
+        }
+        return result;
+    }
+
+    private static void siftUp(double[] distance, int[] position, int i, double d, int p) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (distance[parent] >= d) {
+                break;
+            }
+            distance[i] = distance[parent];
+            position[i] = position[parent];
+            i = parent;
+        }
+        distance[i] = d;
+        position[i] = p;
+    }
+
+    private static void siftDown(double[] distance, int[] position, int size, double d, int p) {
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && distance[child + 1] > distance[child]) {
+                child++;
+            }
+            if (d >= distance[child]) {
+                break;
+            }
+            distance[i] = distance[child];
+            position[i] = position[child];
+            i = child;
+        }
+        distance[i] = d;
+        position[i] = p;
+    }
+
+    private double projectX(Coordinate location) {
+        return location.getLongitude() * metersPerDegreeLon;
+    }
+
+    private double projectY(Coordinate location) {
+        return location.getLatitude() * METERS_PER_DEGREE_LAT;
+    }
+
+    private long cell(double meters) {
+        return (long) Math.floor(meters / cellSize);
+    }
+
+    private static long cellKey(long cx, long cy) {
+        return (cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    private static long cellX(long key) {
+        return key >> 32;
+    }
+
+    private static long cellY(long key) {
+        return (int) key;
+    }
+
+    private int findCell(long key) {
+        int c = Arrays.binarySearch(cellKeys, key);
+        return c < 0 ? -1 : c;
+    }
+}
@@ -0,0 +1,79 @@
+package org.openmetromaps.maps;
+
+import java.util.Arrays;
+
+/**
+ * Station-level graph derived from the ride arcs of a {@link TraversalNetwork}: station
+ * {@code v} has an arc to {@code w} if some line stops at them consecutively, weighted by the
+ * cheapest such ride. Both the forward and the transposed arcs are stored in CSR form; for a
+ * transposed arc {@code reverseArc} gives the index of the matching forward arc. The arcs and
+ * their order only depend on the lines, so graphs built with different costs have the same
+ * arc indices.
+ */
+final class StationGraph {
+    final int stationCount;
+    final int[] start;
+    final int[] head;
+    final double[] weight;
+    final int[] reverseStart;
+    final int[] reverseTail;
+    final int[] reverseArc;
+
+    StationGraph(TraversalNetwork network, double[] arcCost) {
+        int n = network.stationCount();
+        this.stationCount = n;
+        this.start = new int[n + 1];
+        int[] heads = new int[network.arcHead.length];
+        double[] weights = new double[network.arcHead.length];
+        double[] best = new double[n];
+        int[] seenFrom = new int[n];
+        Arrays.fill(seenFrom, -1);
+        int[] touched = new int[n];
+        int count = 0;
+        for (int v = 0; v < n; v++) {
+            start[v] = count;
+            int touchedCount = 0;
+            for (int u = network.stationStopStart[v]; u < network.stationStopStart[v + 1]; u++) {
+                for (int arc = network.arcStart[u]; arc < network.arcStart[u + 1]; arc++) {
+                    int w = network.stopStation[network.arcHead[arc]];
+                    if (w == v) {
+                        continue;
+                    }
+                    if (seenFrom[w] != v) {
+                        seenFrom[w] = v;
+                        best[w] = arcCost[arc];
+                        touched[touchedCount++] = w;
+                    } else {
+                        best[w] = Math.min(best[w], arcCost[arc]);
+                    }
+                }
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                int w = touched[i];
+                heads[count] = w;
+                weights[count++] = best[w];
+            }
+        }
+        start[n] = count;
+        this.head = Arrays.copyOf(heads, count);
+        this.weight = Arrays.copyOf(weights, count);
+
+        this.reverseStart = new int[n + 1];
+        for (int arc = 0; arc < count; arc++) {
+            reverseStart[head[arc] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            reverseStart[v + 1] += reverseStart[v];
+        }
+        this.reverseTail = new int[count];
+        this.reverseArc = new int[count];
+        int[] next = Arrays.copyOf(reverseStart, n);
+        for (int v = 0; v < n; v++) {
+            for (int arc = start[v]; arc < start[v + 1]; arc++) {
+                int slot = next[head[arc]]++;
+                reverseTail[slot] = v;
+                reverseArc[slot] = arc;
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.openmetromaps.maps;
+
+import org.openmetromaps.maps.model.*;
+
+import java.util.*;
+
+/**
+ * Optional timetable layer for the lines of a network.
+ * <p>
+ * Times are seconds since midnight. A trip runs over every stop of its line, either in the
+ * order of {@link Line#getStops()} or in reverse, and gives an arrival and a departure time
+ * for each stop in travel order.
+ */
+public final class Timetable {
+    private final Map<Line, LineTimetable> lineTimetables = new LinkedHashMap<>();
+
+    public void addTrip(Line line, boolean reverse, int[] arrivals, int[] departures) {
+        if (line == null || arrivals == null || departures == null) {
+            throw new IllegalArgumentException("Line and trip times must not be null");
+        }
+        int stopCount = line.getStops().size();
+        if (arrivals.length != stopCount || departures.length != stopCount) {
+            throw new IllegalArgumentException("Trip must have one arrival and departure per stop of the line");
+        }
+        for (int i = 0; i < stopCount; i++) {
+            if (arrivals[i] < 0 || departures[i] < arrivals[i]
+                    || (i > 0 && arrivals[i] < departures[i - 1])) {
+                throw new IllegalArgumentException("Trip times must be non-negative and non-decreasing");
+            }
+        }
+
+        lineTimetables.computeIfAbsent(line, LineTimetable::new).add(reverse, arrivals, departures);
+    }
+
+    public LineTimetable getLineTimetable(Line line) {
+        return lineTimetables.get(line);
+    }
+
+    public Collection<LineTimetable> getLineTimetables() {
+        return Collections.unmodifiableCollection(lineTimetables.values());
+    }
+
+    /**
+     * Trips of a single line, kept sorted by their first departure. The times of trip {@code t}
+     * at stop {@code i} (in travel order) are stored at {@code t * getStopCount() + i}.
+     */
+    public static final class LineTimetable {
+        private final Line line;
+        private final int stopCount;
+        private int tripCount;
+        private boolean[] reverse = new boolean[4];
+        private int[] arrivals;
+        private int[] departures;
+
+        private LineTimetable(Line line) {
+            this.line = line;
+            this.stopCount = line.getStops().size();
+            this.arrivals = new int[4 * stopCount];
+            this.departures = new int[4 * stopCount];
+        }
+
+        private void add(boolean tripReverse, int[] tripArrivals, int[] tripDepartures) {
+            if (tripCount == reverse.length) {
+                reverse = Arrays.copyOf(reverse, tripCount * 2);
+                arrivals = Arrays.copyOf(arrivals, tripCount * 2 * stopCount);
+                departures = Arrays.copyOf(departures, tripCount * 2 * stopCount);
+            }
+
+            // Beszúrás az első indulás szerinti rendezett helyre
+            int position = tripCount;
+            while (position > 0 && departures[(position - 1) * stopCount] > tripDepartures[0]) {
+                position--;
+            }
+            System.arraycopy(reverse, position, reverse, position + 1, tripCount - position);
+            System.arraycopy(arrivals, position * stopCount, arrivals, (position + 1) * stopCount,
+                    (tripCount - position) * stopCount);
+            System.arraycopy(departures, position * stopCount, departures, (position + 1) * stopCount,
+                    (tripCount - position) * stopCount);
+
+            reverse[position] = tripReverse;
+            System.arraycopy(tripArrivals, 0, arrivals, position * stopCount, stopCount);
+            System.arraycopy(tripDepartures, 0, departures, position * stopCount, stopCount);
+            tripCount++;
+        }
+
+        public Line getLine() {
+            return line;
+        }
+
+        public int getStopCount() {
+            return stopCount;
+        }
+
+        public int getTripCount() {
+            return tripCount;
+        }
+
+        public boolean isReverse(int trip) {
+            return reverse[trip];
+        }
+
+        /**
+         * The stop served by the trip at the given position of its travel order.
+         */
+        public Stop getStop(int trip, int position) {
+            return line.getStops().get(reverse[trip] ? stopCount - 1 - position : position);
+        }
+
+        public int getArrival(int trip, int position) {
+            return arrivals[trip * stopCount + position];
+        }
+
+        public int getDeparture(int trip, int position) {
+            return departures[trip * stopCount + position];
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.openmetromaps.maps;
+
+import org.openmetromaps.maps.model.*;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-flight layer over the traversals of one {@link TraversalNetwork}.
+ * <p>
+ * Concurrent requests with the same source, metric, limit and network version share one
+ * computation: the first request runs the traversal on its own thread, the others wait for it
+ * and receive the same unmodifiable result. Nothing is kept once the computation finishes, so
+ * this is not a cache; a request arriving after that runs a new traversal. A change of transfer
+ * penalties, walking transfers or the {@link TraversalMetric#getVersion() metric} starts a new
+ * version, so such requests never join a computation with the old costs.
+ */
+public final class TraversalCoalescer {
+    private final TraversalNetwork network;
+    private final ConcurrentHashMap<Key, CompletableFuture<List<Station>>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public TraversalCoalescer(TraversalNetwork network) {
+        if (network == null) {
+            throw new IllegalArgumentException("Network must not be null");
+        }
+        this.network = network;
+    }
+
+    /**
+     * Same result as {@link MapTraversal#traverseNetwork(TraversalNetwork, Station, TraversalMetric, int)},
+     * computed at most once for concurrent identical requests. A failure of the shared
+     * computation is thrown to every request that joined it.
+     */
+    public List<Station> traverse(Station src, TraversalMetric metric, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must be non-negative");
+        }
+        if (src == null || metric == null) {
+            throw new IllegalArgumentException("Source station and metric must not be null");
+        }
+
+        Key key = new Key(src, metric, limit, network.getVersion(), metric.getVersion());
+        CompletableFuture<List<Station>> created = new CompletableFuture<>();
+        CompletableFuture<List<Station>> running = inFlight.putIfAbsent(key, created);
+        requests.increment();
+        if (running != null) {
+            coalesced.increment();
+            return await(running);
+        }
+
+        executions.increment();
+        try {
+            List<Station> result = Collections.unmodifiableList(
+                    MapTraversal.traverseNetwork(network, src, metric, limit));
+            created.complete(result);
+            return result;
+        } catch (Throwable e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    private static List<Station> await(CompletableFuture<List<Station>> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    public TraversalNetwork getNetwork() {
+        return network;
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Number of traversals actually run.
+     */
+    public long getExecutionCount() {
+        return executions.sum();
+    }
+
+    /**
+     * Number of requests answered by joining a computation started by another request.
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Share of requests that did not run their own traversal, between 0 and 1.
+     */
+    public double getCoalescingRatio() {
+        long total = requests.sum();
+        return total == 0 ? 0.0 : (double) coalesced.sum() / total;
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private static final class Key {
+        private final Station source;
+        private final TraversalMetric metric;
+        private final int limit;
+        private final int version;
+        private final int metricVersion;
+
+        Key(Station source, TraversalMetric metric, int limit, int version, int metricVersion) {
+            this.source = source;
+            this.metric = metric;
+            this.limit = limit;
+            this.version = version;
+            this.metricVersion = metricVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return source.equals(other.source) && metric.equals(other.metric)
+                    && limit == other.limit && version == other.version && metricVersion == other.metricVersion;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(source, metric, limit, version, metricVersion);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.openmetromaps.maps;
+
+import org.openmetromaps.maps.model.*;
+
+/**
+ * Cost model of a traversal over the stop states of a {@link TraversalNetwork}.
+ * <p>
+ * Labels are {@code double} costs that only grow along a route, and a stop is reached while its
+ * label does not exceed the limit. A network evaluates a metric once per arc, station and walking
+ * transfer into primitive cost arrays and caches them until its transfer penalties or walking
+ * transfers or the {@link #getVersion() version} of the metric change, and for no longer than the
+ * metric is referenced elsewhere. The search itself only reads those arrays, so a custom metric
+ * runs the same code as the built-in {@link MapTraversal.MapTraversalLimitType} metrics.
+ * Returning {@link Double#POSITIVE_INFINITY} forbids a move.
+ */
+public interface TraversalMetric {
+
+    /**
+     * Cost of riding from a stop to the next or previous stop of its line; {@code minutes} is the
+     * riding time of the network, including the time spent at the stop.
+     */
+    double rideCost(Stop from, Stop to, double minutes);
+
+    /**
+     * Cost of changing line at the station; {@code transferPenalty} is the network's line-change
+     * time in minutes for the station.
+     */
+    double transferCost(Station station, double transferPenalty);
+
+    /**
+     * Cost of a walking transfer between two stations that takes {@code minutes} on foot.
+     */
+    double walkCost(Station from, Station to, double minutes);
+
+    /**
+     * Label of every stop of a start station.
+     */
+    double startLabel();
+
+    /**
+     * Change counter of a metric whose costs can change, for example with a disruption feed. It
+     * must return a new value after every change, so that costs evaluated earlier are not reused.
+     * Metrics with fixed costs keep the default.
+     */
+    default int getVersion() {
+        return 0;
+    }
+}
@@ -0,0 +1,600 @@
+package org.openmetromaps.maps;
+
+import org.openmetromaps.maps.model.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiled, stop-indexed view of a {@link ModelData} used by the traversal engines.
+ * <p>
+ * Every {@link Stop} is a (station, line) state. Stops of the same station get consecutive
+ * indices, so a line change at a station is a scan over a contiguous index range, and riding
+ * along a line is a scan over the outgoing ride arcs of a stop.
+ */
+public final class TraversalNetwork {
+    static final double AVERAGE_SPEED_KMH = 40.0;
+    static final double STOP_DWELL_MINUTES = 1.0;
+    private static final double HILBERT_SIDE = (1 << 16) - 1;
+
+    private final ModelData model;
+    private final Map<Station, Integer> stationIndex;
+
+    final Station[] stations;
+    final Line[] lines;
+    final Stop[] stops;
+
+    // A station stopjai: [stationStopStart[s], stationStopStart[s + 1])
+    final int[] stationStopStart;
+    final int[] stopStation;
+    final int[] stopLine;
+
+    // Egy stop kimenő menet élei: [arcStart[u], arcStart[u + 1])
+    final int[] arcStart;
+    final int[] arcHead;
+    final double[] arcMinutes;
+
+    // Transzponált menet élek: a stopba befutó élek [reverseArcStart[v], reverseArcStart[v + 1]),
+    // reverseArcForward a megfelelő előre mutató él indexe
+    final int[] reverseArcStart;
+    final int[] reverseArcTail;
+    final int[] reverseArcForward;
+
+    final double[] transferPenalty;
+
+    // Gyalogos átszállások, egyetlen volatile mezőben cserélve, hogy az olvasók sosem lássanak vegyes tömböket
+    private volatile WalkingTransfers walkingTransfers;
+
+    // Átszállási idők vagy gyalogos átszállások módosításakor nő, a kiértékelt metrikák ettől elavulnak;
+    // atomi növelés, hogy párhuzamos módosítások se vesszenek el egymás verziószámában
+    private final AtomicInteger version = new AtomicInteger();
+    // Gyenge kulcsok: egy lekérdezésenként létrehozott metrika költségei vele együtt felszabadulnak
+    private final Map<TraversalMetric, Weights> weightCache = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private TraversalNetwork(ModelData model, List<Station> stationOrder, List<Line> lineOrder) {
+        this.model = model;
+        this.stations = stationOrder.toArray(new Station[0]);
+        this.lines = lineOrder.toArray(new Line[0]);
+        this.stationIndex = new HashMap<>(stations.length * 2);
+        for (int i = 0; i < stations.length; i++) {
+            stationIndex.put(stations[i], i);
+        }
+        Map<Line, Integer> lineIndex = new HashMap<>(lines.length * 2);
+        for (int i = 0; i < lines.length; i++) {
+            lineIndex.put(lines[i], i);
+        }
+
+        // Stopok állomásonként csoportosítva: előbb az állomás saját listája, majd a vonalak minden
+        // további megállója a stop állomásánál, akkor is, ha az állomás nem sorolja fel
+        Set<Stop> grouped = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<List<Stop>> stationStops = new ArrayList<>(stations.length);
+        for (Station station : stations) {
+            List<Stop> group = new ArrayList<>();
+            for (Stop stop : station.getStops()) {
+                if (grouped.add(stop)) {
+                    group.add(stop);
+                }
+            }
+            stationStops.add(group);
+        }
+        for (Line line : lines) {
+            for (Stop stop : line.getStops()) {
+                if (grouped.add(stop)) {
+                    stationStops.get(stationIndex.get(stop.getStation())).add(stop);
+                }
+            }
+        }
+        Map<Stop, Integer> stopIndex = new IdentityHashMap<>();
+        List<Stop> stopOrder = new ArrayList<>();
+        this.stationStopStart = new int[stations.length + 1];
+        for (int s = 0; s < stations.length; s++) {
+            stationStopStart[s] = stopOrder.size();
+            for (Stop stop : stationStops.get(s)) {
+                stopIndex.put(stop, stopOrder.size());
+                stopOrder.add(stop);
+            }
+        }
+        stationStopStart[stations.length] = stopOrder.size();
+
+        this.stops = stopOrder.toArray(new Stop[0]);
+        this.stopStation = new int[stops.length];
+        this.stopLine = new int[stops.length];
+        for (int s = 0; s < stations.length; s++) {
+            for (int u = stationStopStart[s]; u < stationStopStart[s + 1]; u++) {
+                stopStation[u] = s;
+                stopLine[u] = lineIndex.get(stops[u].getLine());
+            }
+        }
+
+        int[] degree = new int[stops.length];
+        for (Line line : lines) {
+            List<Stop> lineStops = line.getStops();
+            for (int i = 0; i + 1 < lineStops.size(); i++) {
+                degree[stopIndex.get(lineStops.get(i))]++;
+                degree[stopIndex.get(lineStops.get(i + 1))]++;
+            }
+        }
+        this.arcStart = new int[stops.length + 1];
+        for (int u = 0; u < stops.length; u++) {
+            arcStart[u + 1] = arcStart[u] + degree[u];
+        }
+        this.arcHead = new int[arcStart[stops.length]];
+        this.arcMinutes = new double[arcHead.length];
+        int[] next = Arrays.copyOf(arcStart, stops.length);
+        for (Line line : lines) {
+            List<Stop> lineStops = line.getStops();
+            for (int i = 0; i + 1 < lineStops.size(); i++) {
+                int a = stopIndex.get(lineStops.get(i));
+                int b = stopIndex.get(lineStops.get(i + 1));
+                double minutes = travelMinutes(stations[stopStation[a]].getLocation(),
+                        stations[stopStation[b]].getLocation()) + STOP_DWELL_MINUTES;
+                arcHead[next[a]] = b;
+                arcMinutes[next[a]++] = minutes;
+                arcHead[next[b]] = a;
+                arcMinutes[next[b]++] = minutes;
+            }
+        }
+
+        this.reverseArcStart = new int[stops.length + 1];
+        for (int arc = 0; arc < arcHead.length; arc++) {
+            reverseArcStart[arcHead[arc] + 1]++;
+        }
+        for (int v = 0; v < stops.length; v++) {
+            reverseArcStart[v + 1] += reverseArcStart[v];
+        }
+        this.reverseArcTail = new int[arcHead.length];
+        this.reverseArcForward = new int[arcHead.length];
+        int[] reverseNext = Arrays.copyOf(reverseArcStart, stops.length);
+        for (int u = 0; u < stops.length; u++) {
+            for (int arc = arcStart[u]; arc < arcStart[u + 1]; arc++) {
+                int slot = reverseNext[arcHead[arc]]++;
+                reverseArcTail[slot] = u;
+                reverseArcForward[slot] = arc;
+            }
+        }
+
+        this.transferPenalty = new double[stations.length];
+        this.walkingTransfers = new WalkingTransfers(new int[stations.length + 1], new int[0], new double[0]);
+    }
+
+    /**
+     * Numbering of stations, and with them of their stops, in a compiled network.
+     */
+    public enum StationOrder {
+        /** Order of {@code ModelData.stations}, followed by stations only reachable through stops. */
+        LOAD_ORDER,
+        /** Reverse Cuthill–McKee order of the station graph given by consecutive stops of lines. */
+        CUTHILL_MCKEE,
+        /** Order along a Hilbert curve over the station coordinates. */
+        HILBERT
+    }
+
+    public static TraversalNetwork compile(ModelData model) {
+        return compile(model, StationOrder.LOAD_ORDER);
+    }
+
+    /**
+     * Compiles the model with stations numbered in the given order. Neighbouring stations then
+     * get nearby indices, so their stops, arcs and labels share cache lines during a traversal.
+     * Results are always reported as {@link Station} objects, so the order is not visible to
+     * callers apart from the indices of {@link #getStation(int)} and {@link #indexOf(Station)}.
+     */
+    public static TraversalNetwork compile(ModelData model, StationOrder order) {
+        if (model == null) {
+            throw new IllegalArgumentException("Model must not be null");
+        }
+
+        // A modellben nem szereplő, de stopokon keresztül elérhető vonalakat és állomásokat is felvesszük
+        Set<Station> stationOrder = new LinkedHashSet<>(model.stations);
+        Set<Line> lineOrder = new LinkedHashSet<>(model.lines);
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.addAll(stationOrder);
+        pending.addAll(lineOrder);
+        while (!pending.isEmpty()) {
+            Object current = pending.poll();
+            List<Stop> currentStops = current instanceof Station
+                    ? ((Station) current).getStops() : ((Line) current).getStops();
+            for (Stop stop : currentStops) {
+                if (stationOrder.add(stop.getStation())) {
+                    pending.add(stop.getStation());
+                }
+                if (lineOrder.add(stop.getLine())) {
+                    pending.add(stop.getLine());
+                }
+            }
+        }
+
+        if (order == null) {
+            throw new IllegalArgumentException("Station order must not be null");
+        }
+        List<Station> stationList = new ArrayList<>(stationOrder);
+        switch (order) {
+            case CUTHILL_MCKEE:
+                stationList = cuthillMcKeeOrder(stationList, lineOrder);
+                break;
+            case HILBERT:
+                stationList = hilbertOrder(stationList);
+                break;
+            default:
+                break;
+        }
+        return new TraversalNetwork(model, stationList, new ArrayList<>(lineOrder));
+    }
+
+    private static List<Station> cuthillMcKeeOrder(List<Station> stationList, Collection<Line> lineList) {
+        int n = stationList.size();
+        Map<Station, Integer> index = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            index.put(stationList.get(i), i);
+        }
+
+        // Állomásgráf a vonalak egymást követő megállóiból, CSR formában
+        int[] degree = new int[n];
+        for (Line line : lineList) {
+            List<Stop> lineStops = line.getStops();
+            for (int i = 0; i + 1 < lineStops.size(); i++) {
+                int a = index.get(lineStops.get(i).getStation());
+                int b = index.get(lineStops.get(i + 1).getStation());
+                if (a != b) {
+                    degree[a]++;
+                    degree[b]++;
+                }
+            }
+        }
+        int[] start = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            start[v + 1] = start[v] + degree[v];
+        }
+        int[] neighbour = new int[start[n]];
+        int[] next = Arrays.copyOf(start, n);
+        for (Line line : lineList) {
+            List<Stop> lineStops = line.getStops();
+            for (int i = 0; i + 1 < lineStops.size(); i++) {
+                int a = index.get(lineStops.get(i).getStation());
+                int b = index.get(lineStops.get(i + 1).getStation());
+                if (a != b) {
+                    neighbour[next[a]++] = b;
+                    neighbour[next[b]++] = a;
+                }
+            }
+        }
+
+        // Komponensenként a legkisebb fokú állomásból induló BFS, a szomszédok fok szerint növekvően
+        Integer[] byDegree = new Integer[n];
+        for (int v = 0; v < n; v++) {
+            byDegree[v] = v;
+        }
+        Arrays.sort(byDegree, Comparator.comparingInt(v -> degree[v]));
+        boolean[] visited = new boolean[n];
+        int[] queue = new int[n];
+        int tail = 0;
+        for (int root : byDegree) {
+            if (visited[root]) {
+                continue;
+            }
+            visited[root] = true;
+            queue[tail++] = root;
+            for (int head = tail - 1; head < tail; head++) {
+                int v = queue[head];
+                int first = tail;
+                for (int i = start[v]; i < start[v + 1]; i++) {
+                    int w = neighbour[i];
+                    if (!visited[w]) {
+                        visited[w] = true;
+                        queue[tail++] = w;
+                    }
+                }
+                sortByDegree(queue, first, tail, degree);
+            }
+        }
+
+        List<Station> result = new ArrayList<>(n);
+        for (int i = n - 1; i >= 0; i--) {
+            result.add(stationList.get(queue[i]));
+        }
+        return result;
+    }
+
+    private static void sortByDegree(int[] values, int from, int to, int[] degree) {
+        for (int i = from + 1; i < to; i++) {
+            int value = values[i];
+            int j = i - 1;
+            while (j >= from && degree[values[j]] > degree[value]) {
+                values[j + 1] = values[j];
+                j--;
+            }
+            values[j + 1] = value;
+        }
+    }
+
+    private static List<Station> hilbertOrder(List<Station> stationList) {
+        int n = stationList.size();
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        for (Station station : stationList) {
+            Coordinate location = station.getLocation();
+            minLat = Math.min(minLat, location.getLatitude());
+            maxLat = Math.max(maxLat, location.getLatitude());
+            minLon = Math.min(minLon, location.getLongitude());
+            maxLon = Math.max(maxLon, location.getLongitude());
+        }
+        double latScale = maxLat > minLat ? HILBERT_SIDE / (maxLat - minLat) : 0;
+        double lonScale = maxLon > minLon ? HILBERT_SIDE / (maxLon - minLon) : 0;
+
+        // Rendezési kulcs: Hilbert-index a felső, eredeti sorszám az alsó bitekben (stabil sorrend)
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            Coordinate location = stationList.get(i).getLocation();
+            int x = (int) ((location.getLongitude() - minLon) * lonScale);
+            int y = (int) ((location.getLatitude() - minLat) * latScale);
+            keys[i] = (hilbertIndex(x, y) << 31) | i;
+        }
+        Arrays.sort(keys);
+        List<Station> result = new ArrayList<>(n);
+        for (long key : keys) {
+            result.add(stationList.get((int) (key & Integer.MAX_VALUE)));
+        }
+        return result;
+    }
+
+    /**
+     * Position of the cell {@code (x, y)} along the Hilbert curve filling a
+     * {@code 2^16 x 2^16} grid.
+     */
+    static long hilbertIndex(int x, int y) {
+        long d = 0;
+        for (int s = 1 << 15; s > 0; s >>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Mean distance between the indices of the two stops of a ride arc; a smaller value means
+     * that a traversal touches fewer distinct cache lines.
+     */
+    double averageArcSpan() {
+        if (arcHead.length == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int u = 0; u < stops.length; u++) {
+            for (int arc = arcStart[u]; arc < arcStart[u + 1]; arc++) {
+                sum += Math.abs(arcHead[arc] - u);
+            }
+        }
+        return (double) sum / arcHead.length;
+    }
+
+    public ModelData getModel() {
+        return model;
+    }
+
+    public int stationCount() {
+        return stations.length;
+    }
+
+    public int stopCount() {
+        return stops.length;
+    }
+
+    public Station getStation(int index) {
+        return stations[index];
+    }
+
+    public int indexOf(Station station) {
+        Integer index = stationIndex.get(station);
+        if (index == null) {
+            throw new IllegalArgumentException("Station is not part of the network: " + station);
+        }
+        return index;
+    }
+
+    /**
+     * Incremented whenever transfer penalties or walking transfers change, so results computed
+     * for an older version may be stale.
+     */
+    public int getVersion() {
+        return version.get();
+    }
+
+    public double getTransferPenalty(Station station) {
+        return transferPenalty[indexOf(station)];
+    }
+
+    /**
+     * Sets the time in minutes charged for changing lines at the given station.
+     */
+    public void setTransferPenalty(Station station, double minutes) {
+        transferPenalty[indexOf(station)] = checkPenalty(minutes);
+        version.incrementAndGet();
+    }
+
+    /**
+     * Sets the same line-change time for every station, overriding earlier per-station values.
+     */
+    public void setDefaultTransferPenalty(double minutes) {
+        Arrays.fill(transferPenalty, checkPenalty(minutes));
+        version.incrementAndGet();
+    }
+
+    private static double checkPenalty(double minutes) {
+        if (!(minutes >= 0) || Double.isInfinite(minutes)) {
+            throw new IllegalArgumentException("Transfer penalty must be a non-negative finite number");
+        }
+        return minutes;
+    }
+
+    /**
+     * Adds walking transfers between every pair of distinct stations at most
+     * {@code radiusMeters} apart, replacing previously added ones. Candidate pairs come from the
+     * grid cells of the index, so no all-pairs check is made.
+     */
+    public void setWalkingTransfers(SpatialIndex index, double radiusMeters, double walkingSpeedKmh) {
+        if (index == null || index.getNetwork() != this) {
+            throw new IllegalArgumentException("Spatial index must be built over this network");
+        }
+        if (!(walkingSpeedKmh > 0) || Double.isInfinite(walkingSpeedKmh)) {
+            throw new IllegalArgumentException("Walking speed must be a positive finite number");
+        }
+
+        int[] degree = new int[stations.length];
+        index.forEachPairWithin(radiusMeters, (station, other, distance) -> {
+            degree[station]++;
+            degree[other]++;
+        });
+        int[] start = new int[stations.length + 1];
+        for (int s = 0; s < stations.length; s++) {
+            start[s + 1] = start[s] + degree[s];
+        }
+        int[] target = new int[start[stations.length]];
+        double[] minutes = new double[target.length];
+        int[] next = Arrays.copyOf(start, stations.length);
+        double metersPerMinute = walkingSpeedKmh * 1000 / 60;
+        index.forEachPairWithin(radiusMeters, (station, other, distance) -> {
+            double walk = distance / metersPerMinute;
+            target[next[station]] = other;
+            minutes[next[station]++] = walk;
+            target[next[other]] = station;
+            minutes[next[other]++] = walk;
+        });
+
+        // Előbb a teljes CSR hármas jelenik meg, csak utána nő a verzió
+        this.walkingTransfers = new WalkingTransfers(start, target, minutes);
+        version.incrementAndGet();
+    }
+
+    public int walkingTransferCount() {
+        return walkingTransfers.target.length;
+    }
+
+    /**
+     * Walking transfers between stations in CSR form: the transfers of station {@code s} are
+     * {@code [start[s], start[s + 1])}, and every transfer is stored in both directions.
+     */
+    private static final class WalkingTransfers {
+        final int[] start;
+        final int[] target;
+        final double[] minutes;
+
+        WalkingTransfers(int[] start, int[] target, double[] minutes) {
+            this.start = start;
+            this.target = target;
+            this.minutes = minutes;
+        }
+    }
+
+    /**
+     * Costs of the metric on this network, evaluated on first use and again after the network or
+     * the {@link TraversalMetric#getVersion() metric} changed. The costs are kept only while the
+     * metric itself is referenced elsewhere.
+     */
+    Weights weights(TraversalMetric metric) {
+        if (metric == null) {
+            throw new IllegalArgumentException("Metric must not be null");
+        }
+        Weights cached = weightCache.get(metric);
+        if (cached == null || cached.version != version.get() || cached.metricVersion != metric.getVersion()) {
+            // A kiértékelés a zár nélkül fut, párhuzamos hívások legfeljebb kétszer számolnak
+            cached = new Weights(this, metric);
+            weightCache.put(metric, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * A metric evaluated on one version of the network: ride costs for the forward and the
+     * transposed arcs, line-change costs per station and walking costs per walking transfer in
+     * both directions. {@code reverseWalkCost[walk]} is the cost of walking from the target of
+     * {@code walk} to its start, as needed by backward searches.
+     */
+    static final class Weights {
+        final int version;
+        final int metricVersion;
+        final double[] arcCost;
+        final double[] reverseArcCost;
+        final double[] transferCost;
+        final int[] walkStart;
+        final int[] walkTarget;
+        final double[] walkCost;
+        final double[] reverseWalkCost;
+        final boolean walking;
+        final double startLabel;
+
+        private Weights(TraversalNetwork network, TraversalMetric metric) {
+            this.version = network.version.get();
+            this.metricVersion = metric.getVersion();
+            Stop[] stops = network.stops;
+            this.arcCost = new double[network.arcHead.length];
+            for (int u = 0; u < stops.length; u++) {
+                for (int arc = network.arcStart[u]; arc < network.arcStart[u + 1]; arc++) {
+                    arcCost[arc] = checkCost(metric.rideCost(stops[u], stops[network.arcHead[arc]],
+                            network.arcMinutes[arc]));
+                }
+            }
+            this.reverseArcCost = new double[arcCost.length];
+            for (int slot = 0; slot < reverseArcCost.length; slot++) {
+                reverseArcCost[slot] = arcCost[network.reverseArcForward[slot]];
+            }
+
+            Station[] stations = network.stations;
+            this.transferCost = new double[stations.length];
+            for (int s = 0; s < stations.length; s++) {
+                transferCost[s] = checkCost(metric.transferCost(stations[s], network.transferPenalty[s]));
+            }
+
+            WalkingTransfers walks = network.walkingTransfers;
+            this.walkStart = walks.start;
+            this.walkTarget = walks.target;
+            this.walkCost = new double[walkTarget.length];
+            this.reverseWalkCost = new double[walkTarget.length];
+            boolean anyWalk = false;
+            for (int s = 0; s < stations.length; s++) {
+                for (int walk = walkStart[s]; walk < walkStart[s + 1]; walk++) {
+                    walkCost[walk] = checkCost(metric.walkCost(stations[s], stations[walkTarget[walk]],
+                            walks.minutes[walk]));
+                    reverseWalkCost[walk] = checkCost(metric.walkCost(stations[walkTarget[walk]], stations[s],
+                            walks.minutes[walk]));
+                    anyWalk |= walkCost[walk] != Double.POSITIVE_INFINITY;
+                }
+            }
+            this.walking = anyWalk;
+            this.startLabel = checkCost(metric.startLabel());
+        }
+
+        static double checkCost(double cost) {
+            if (!(cost >= 0)) {
+                throw new IllegalArgumentException("Metric costs must be non-negative");
+            }
+            return cost;
+        }
+    }
+
+    static double distanceKm(Coordinate from, Coordinate to) {
+        double lat1 = from.getLatitude();
+        double lon1 = from.getLongitude();
+        double lat2 = to.getLatitude();
+        double lon2 = to.getLongitude();
+
+        double deltaLat = Math.abs(lat1 - lat2) * 110.574;
+        double deltaLon = Math.abs(lon1 - lon2) * 111.320 * Math.cos(Math.toRadians(lat1));
+        return Math.sqrt(deltaLat * deltaLat + deltaLon * deltaLon);
+    }
+
+    static double travelMinutes(Coordinate from, Coordinate to) {
+        return (distanceKm(from, to) / AVERAGE_SPEED_KMH) * 60; // 40 km/h in minutes
+    }
+}
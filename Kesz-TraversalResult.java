@@ -0,0 +1,89 @@
+package org.openmetromaps.maps;
+
+import org.openmetromaps.maps.model.*;
+
+import java.util.*;
+
+/**
+ * Reachable stations of a traversal together with the labels of their stops and, if recorded,
+ * the predecessor of every labelled stop.
+ * <p>
+ * Predecessors are stop indices of the network, so one {@code int} gives both the previous
+ * station and the line it was reached on; {@code -1} marks a start stop.
+ */
+public final class TraversalResult {
+    static final int NO_PREDECESSOR = -1;
+
+    private final TraversalNetwork network;
+    private final boolean reverse;
+    private final List<Station> reachableStations;
+    private final double[] labels;
+    private final int[] predecessor;
+    private final int[] firstStop;
+
+    TraversalResult(TraversalNetwork network, boolean reverse, List<Station> reachableStations, double[] labels,
+                    int[] predecessor, int[] firstStop) {
+        this.network = network;
+        this.reverse = reverse;
+        this.reachableStations = reachableStations;
+        this.labels = labels;
+        this.predecessor = predecessor;
+        this.firstStop = firstStop;
+    }
+
+    public List<Station> getReachableStations() {
+        return reachableStations;
+    }
+
+    public boolean hasPaths() {
+        return predecessor != null;
+    }
+
+    /**
+     * Stops, transfers or minutes needed to reach the station, or infinity if it was not reached.
+     */
+    public double getLabel(Station station) {
+        int s = network.indexOf(station);
+        double best = Double.POSITIVE_INFINITY;
+        for (int u = network.stationStopStart[s]; u < network.stationStopStart[s + 1]; u++) {
+            best = Math.min(best, labels[u]);
+        }
+        return best;
+    }
+
+    /**
+     * The route to a reached station as the stops passed, in travel order. A line change shows
+     * up as two consecutive stops of the same station, a walking transfer as two consecutive
+     * stops of stations that are not neighbours on a line. For a reverse traversal the route
+     * leads from the station to the traversal's destination. Empty if the station was not reached.
+     */
+    public List<Stop> getPath(Station station) {
+        if (predecessor == null) {
+            throw new IllegalStateException("Paths were not recorded for this traversal");
+        }
+        int stop = firstStop[network.indexOf(station)];
+        List<Stop> path = new ArrayList<>();
+        while (stop != NO_PREDECESSOR) {
+            path.add(network.stops[stop]);
+            stop = predecessor[stop];
+        }
+        if (!reverse) {
+            Collections.reverse(path);
+        }
+        return path;
+    }
+
+    /**
+     * Number of line changes, walks included, on the route returned by {@link #getPath(Station)}.
+     */
+    public int getLineChangeCount(Station station) {
+        List<Stop> path = getPath(station);
+        int changes = 0;
+        for (int i = 1; i < path.size(); i++) {
+            if (path.get(i).getLine() != path.get(i - 1).getLine()) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+}
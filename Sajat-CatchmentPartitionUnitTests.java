@@ -0,0 +1,87 @@
+package org.openmetromaps.maps;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmetromaps.maps.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CatchmentPartitionUnitTests {
+
+    ModelData model;
+
+    Station stationA;
+    Station stationB;
+    Station stationC;
+    Station stationD;
+
+    /*
+     * Line 1: A - B - C - D
+     * Line 2: B - C - D
+     */
+    @Before
+    public void createMap() {
+        stationA = new Station(0, "A", new Coordinate(47.491, 19.061), new ArrayList<>());
+        stationB = new Station(1, "B", new Coordinate(47.492, 19.062), new ArrayList<>());
+        stationC = new Station(2, "C", new Coordinate(47.493, 19.063), new ArrayList<>());
+        stationD = new Station(3, "D", new Coordinate(47.494, 19.064), new ArrayList<>());
+
+        Line line1 = new Line(4, "1", "#FF0000", false, new ArrayList<>());
+        addStop(stationA, line1);
+        addStop(stationB, line1);
+        addStop(stationC, line1);
+        addStop(stationD, line1);
+
+        Line line2 = new Line(5, "2", "#00FF00", false, new ArrayList<>());
+        addStop(stationB, line2);
+        addStop(stationC, line2);
+        addStop(stationD, line2);
+
+        model = new ModelData(new ArrayList<>(List.of(line1, line2)),
+                new ArrayList<>(List.of(stationA, stationB, stationC, stationD)));
+    }
+
+    private void addStop(Station station, Line line) {
+        Stop stop = new Stop(station, line);
+        station.getStops().add(stop);
+        line.getStops().add(stop);
+    }
+
+    @Test
+    public void testCatchmentPartitionByStops() {
+        // Arrange
+        TraversalNetwork network = TraversalNetwork.compile(model);
+
+        // Act
+        CatchmentPartition partition = CatchmentPartition.compute(network, List.of(stationD, stationA),
+                MapTraversal.MapTraversalLimitType.STOP_LIMIT, 10, true);
+
+        // Assert
+        assertArrayEquals(new int[] {1, 1, 0, 0}, partition.getFacilityIndices());
+        assertEquals(1.0, partition.getDistance(stationB), 0.0);
+        assertEquals(List.of(stationC, stationD), partition.getCatchment(stationD));
+        assertFalse(partition.isTied(stationB));
+    }
+
+    @Test
+    public void testCatchmentPartitionTiesAndLimit() {
+        // Arrange
+        TraversalNetwork network = TraversalNetwork.compile(model);
+
+        // Act
+        CatchmentPartition partition = CatchmentPartition.compute(network, List.of(stationC, stationA),
+                MapTraversal.MapTraversalLimitType.STOP_LIMIT, 1, false);
+        CatchmentPartition transfers = CatchmentPartition.compute(network, List.of(stationA),
+                MapTraversal.MapTraversalLimitType.TRANSFER_LIMIT, 0, false);
+
+        // Assert - B mindkettőtől 1 megállóra van: a kisebb indexű (C) nyer, döntetlenként jelölve
+        assertEquals(stationC, partition.getFacility(stationB));
+        assertTrue(partition.isTied(stationB));
+        assertFalse(partition.isTied(stationD));
+        assertEquals(stationA, transfers.getFacility(stationD));
+        assertEquals(0.0, transfers.getDistance(stationD), 0.0);
+    }
+}
@@ -0,0 +1,264 @@
+package org.openmetromaps.maps;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmetromaps.maps.model.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ConnectionScanUnitTests {
+
+    ModelData model;
+
+    Station stationA;
+    Station stationB;
+    Station stationC;
+    Station stationD;
+    Station stationX;
+    Station stationY;
+    Station stationZ;
+
+    Line line1;
+    Line line2;
+
+    Timetable timetable;
+
+    /*
+     * Line 1: A - B - C
+     * Line 2: C - D
+     *
+     * Line 1 indul 8:00-kor és 8:10-kor A-ból, Line 2 8:15-kor és 8:30-kor C-ből.
+     */
+    @Before
+    public void createMap() {
+        stationA = new Station(0, "A", new Coordinate(47.491, 19.061), new ArrayList<>());
+        stationB = new Station(1, "B", new Coordinate(47.492, 19.062), new ArrayList<>());
+        stationC = new Station(2, "C", new Coordinate(47.493, 19.063), new ArrayList<>());
+        stationD = new Station(3, "D", new Coordinate(47.494, 19.064), new ArrayList<>());
+
+        line1 = new Line(4, "1", "#FF0000", false, new ArrayList<>());
+        addStop(stationA, line1);
+        addStop(stationB, line1);
+        addStop(stationC, line1);
+
+        line2 = new Line(5, "2", "#00FF00", false, new ArrayList<>());
+        addStop(stationC, line2);
+        addStop(stationD, line2);
+
+        model = new ModelData(new ArrayList<>(List.of(line1, line2)),
+                new ArrayList<>(List.of(stationA, stationB, stationC, stationD)));
+
+        timetable = new Timetable();
+        timetable.addTrip(line1, false, times(8, 0, 8, 5, 8, 10), times(8, 0, 8, 5, 8, 10));
+        timetable.addTrip(line1, false, times(8, 10, 8, 15, 8, 20), times(8, 10, 8, 15, 8, 20));
+        timetable.addTrip(line2, false, times(8, 15, 8, 20), times(8, 15, 8, 20));
+        timetable.addTrip(line2, false, times(8, 30, 8, 35), times(8, 30, 8, 35));
+    }
+
+    private void addStop(Station station, Line line) {
+        Stop stop = new Stop(station, line);
+        station.getStops().add(stop);
+        line.getStops().add(stop);
+    }
+
+    private static int[] times(int... hoursAndMinutes) {
+        int[] result = new int[hoursAndMinutes.length / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = time(hoursAndMinutes[2 * i], hoursAndMinutes[2 * i + 1]);
+        }
+        return result;
+    }
+
+    private static int time(int hours, int minutes) {
+        return hours * 3600 + minutes * 60;
+    }
+
+    @Test
+    public void testEarliestArrivalWithTransfer() {
+        ConnectionScan scan = new ConnectionScan(TraversalNetwork.compile(model), timetable);
+
+        int[] arrivals = scan.earliestArrivals(stationA, time(8, 0), time(9, 0));
+
+        assertEquals(time(8, 0), arrivals[0]);
+        assertEquals(time(8, 5), arrivals[1]);
+        assertEquals(time(8, 10), arrivals[2]);
+        assertEquals(time(8, 20), arrivals[3]);
+    }
+
+    @Test
+    public void testTransferPenaltyMissesConnection() {
+        TraversalNetwork network = TraversalNetwork.compile(model);
+        network.setTransferPenalty(stationC, 6.0);
+        ConnectionScan scan = new ConnectionScan(network, timetable);
+
+        int[] arrivals = scan.earliestArrivals(stationA, time(8, 0), time(9, 0));
+
+        // 8:10 + 6 perc átszállás után csak a 8:30-as járat érhető el
+        assertEquals(time(8, 35), arrivals[3]);
+    }
+
+    @Test
+    public void testReachableStationsByDeadline() {
+        ConnectionScan scan = new ConnectionScan(TraversalNetwork.compile(model), timetable);
+
+        List<Station> result = scan.reachableStations(stationA, time(8, 1), time(8, 16));
+
+        Set<Station> expected = Set.of(stationA, stationB);
+        assertEquals(expected, new HashSet<>(result));
+    }
+
+    @Test
+    public void testZeroDurationConnectionBeforeSameTimeDeparture() {
+        Station stationS = new Station(6, "S", new Coordinate(47.495, 19.065), new ArrayList<>());
+        Line lineIn = new Line(7, "3", "#0000FF", false, new ArrayList<>());
+        addStop(stationA, lineIn);
+        addStop(stationS, lineIn);
+        Line lineOut = new Line(8, "4", "#FFFF00", false, new ArrayList<>());
+        addStop(stationS, lineOut);
+        addStop(stationB, lineOut);
+        ModelData zeroModel = new ModelData(new ArrayList<>(List.of(lineIn, lineOut)),
+                new ArrayList<>(List.of(stationA, stationB, stationS)));
+
+        // A korábban felvett S-B járat ugyanakkor indul, amikor az A-S járat nulla idő alatt beér
+        Timetable zeroTimetable = new Timetable();
+        zeroTimetable.addTrip(lineOut, false, times(10, 0, 10, 10), times(10, 0, 10, 10));
+        zeroTimetable.addTrip(lineIn, false, times(10, 0, 10, 0), times(10, 0, 10, 0));
+        ConnectionScan scan = new ConnectionScan(TraversalNetwork.compile(zeroModel), zeroTimetable);
+
+        List<Station> result = scan.reachableStations(stationA, time(10, 0), time(11, 0));
+
+        assertEquals(Set.of(stationA, stationS, stationB), new HashSet<>(result));
+    }
+
+    /*
+     * A - X - Y (3-as vonal), Y - Z (4-es vonal); az X-Y kapcsolat a járatának 1., az Y-Z a 0.
+     * szakasza, mindkettő 100-kor indul és érkezik.
+     */
+    private ConnectionScan zeroDurationScan() {
+        stationX = new Station(6, "X", new Coordinate(47.495, 19.065), new ArrayList<>());
+        stationY = new Station(7, "Y", new Coordinate(47.496, 19.066), new ArrayList<>());
+        stationZ = new Station(8, "Z", new Coordinate(47.497, 19.067), new ArrayList<>());
+        Line lineIn = new Line(9, "3", "#0000FF", false, new ArrayList<>());
+        addStop(stationA, lineIn);
+        addStop(stationX, lineIn);
+        addStop(stationY, lineIn);
+        Line lineOut = new Line(10, "4", "#FFFF00", false, new ArrayList<>());
+        addStop(stationY, lineOut);
+        addStop(stationZ, lineOut);
+        ModelData zeroModel = new ModelData(new ArrayList<>(List.of(lineIn, lineOut)),
+                new ArrayList<>(List.of(stationA, stationX, stationY, stationZ)));
+
+        Timetable zeroTimetable = new Timetable();
+        zeroTimetable.addTrip(lineIn, false, new int[]{50, 100, 100}, new int[]{50, 100, 100});
+        zeroTimetable.addTrip(lineOut, false, new int[]{100, 100}, new int[]{100, 100});
+        return new ConnectionScan(TraversalNetwork.compile(zeroModel), zeroTimetable);
+    }
+
+    @Test
+    public void testZeroDurationConnectionsOfDifferentTrips() {
+        ConnectionScan scan = zeroDurationScan();
+
+        List<Station> result = scan.reachableStations(stationX, 100, 100);
+
+        assertEquals(Set.of(stationX, stationY, stationZ), new HashSet<>(result));
+        assertEquals(Set.of(stationA, stationX, stationY, stationZ),
+                new HashSet<>(scan.reachableStations(stationA, 50, 100)));
+    }
+
+    @Test
+    public void testProfileWithZeroDurationConnections() {
+        ConnectionScan scan = zeroDurationScan();
+        TraversalNetwork network = scan.getNetwork();
+
+        ReachabilityProfile profile = scan.profile(stationA, 40, 110, 10, 60);
+
+        for (int k = 0; k < profile.getDepartureCount(); k++) {
+            int departureTime = profile.getDepartureTime(k);
+            int[] expected = scan.earliestArrivals(stationA, departureTime, departureTime + 60);
+            for (int s = 0; s < network.stationCount(); s++) {
+                assertEquals(expected[s], profile.getArrival(network.getStation(s), k));
+            }
+        }
+        // Z-be csak az 50-es indulással, a két nulla idejű kapcsolaton át lehet eljutni
+        assertEquals(100, profile.getArrival(stationZ, 1));
+        assertEquals(Integer.MAX_VALUE, profile.getArrival(stationZ, 2));
+    }
+
+    @Test
+    public void testProfileMatchesSingleDepartureQueries() {
+        ConnectionScan scan = new ConnectionScan(TraversalNetwork.compile(model), timetable);
+
+        ReachabilityProfile profile = scan.profile(stationA, time(7, 50), time(8, 20), 60, 3600);
+
+        assertEquals(31, profile.getDepartureCount());
+        for (int k = 0; k < profile.getDepartureCount(); k++) {
+            int departureTime = profile.getDepartureTime(k);
+            int[] expected = scan.earliestArrivals(stationA, departureTime, departureTime + 3600);
+            for (Station station : model.stations) {
+                assertEquals(expected[model.stations.indexOf(station)], profile.getArrival(station, k));
+            }
+        }
+    }
+
+    @Test
+    public void testProfileEarliestArrivalFunction() {
+        ConnectionScan scan = new ConnectionScan(TraversalNetwork.compile(model), timetable);
+
+        ReachabilityProfile profile = scan.profile(stationA, time(8, 0), time(8, 15), 300, 3600);
+
+        int[] arrivalsAtD = profile.getEarliestArrivalFunction(stationD);
+        assertEquals(time(8, 20), arrivalsAtD[0]);
+        assertEquals(time(8, 35), arrivalsAtD[1]);
+        assertEquals(time(8, 35), arrivalsAtD[2]);
+        assertEquals(Integer.MAX_VALUE, arrivalsAtD[3]);
+    }
+
+    @Test
+    public void testProfileDoesNotReuseTripsBoardedLater() {
+        Station stationP = new Station(10, "P", new Coordinate(47.501, 19.071), new ArrayList<>());
+        Station stationQ = new Station(11, "Q", new Coordinate(47.502, 19.072), new ArrayList<>());
+        Station stationS = new Station(12, "S", new Coordinate(47.503, 19.073), new ArrayList<>());
+        Station stationR = new Station(13, "R", new Coordinate(47.504, 19.074), new ArrayList<>());
+        Station stationX = new Station(14, "X", new Coordinate(47.505, 19.075), new ArrayList<>());
+        Line main = new Line(15, "5", "#FF00FF", false, new ArrayList<>());
+        addStop(stationP, main);
+        addStop(stationQ, main);
+        addStop(stationS, main);
+        addStop(stationR, main);
+        Line branch = new Line(16, "6", "#00FFFF", false, new ArrayList<>());
+        addStop(stationS, branch);
+        addStop(stationX, branch);
+        ModelData profileModel = new ModelData(new ArrayList<>(List.of(main, branch)),
+                new ArrayList<>(List.of(stationP, stationQ, stationS, stationR, stationX)));
+
+        Timetable profileTimetable = new Timetable();
+        profileTimetable.addTrip(main, false, new int[]{550, 560, 700, 800}, new int[]{550, 560, 700, 800});
+        profileTimetable.addTrip(branch, false, new int[]{520, 600}, new int[]{520, 600});
+        ConnectionScan scan = new ConnectionScan(TraversalNetwork.compile(profileModel), profileTimetable);
+
+        // A 650-es indulásnál S-ben elért járat korábbi megállója, Q, 500-as indulással sem érhető el
+        ReachabilityProfile profile = scan.profile(stationS, 500, 650, 150, 1000);
+
+        assertEquals(2, profile.getDepartureCount());
+        for (int k = 0; k < profile.getDepartureCount(); k++) {
+            int departureTime = profile.getDepartureTime(k);
+            int[] expected = scan.earliestArrivals(stationS, departureTime, departureTime + 1000);
+            for (Station station : profileModel.stations) {
+                assertEquals(expected[profileModel.stations.indexOf(station)], profile.getArrival(station, k));
+            }
+        }
+        assertEquals(Integer.MAX_VALUE, profile.getArrival(stationQ, 0));
+        assertEquals(Set.of(stationS, stationR, stationX),
+                new HashSet<>(scan.reachableStations(stationS, 500, 1500)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTripWithWrongStopCount() {
+        timetable.addTrip(line2, false, times(9, 0), times(9, 0));
+    }
+}
@@ -5,9 +5,12 @@ import org.junit.Test;
 import org.openmetromaps.maps.model.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -200,6 +203,31 @@ public class MapTraversalUnitTests {
         assertEquals(expected, new HashSet<>(result));
     }
 
+    @Test
+    public void testCompileStopMissingFromStation() {
+        // Arrange
+        // Az S állomás nem sorolja fel a 3-as vonal rá eső megállóját
+        Station stationS = new Station(6, "S", new Coordinate(47.497, 19.067), new ArrayList<>());
+        Line line3 = new Line(6, "3", "#0000FF", false, new ArrayList<>());
+        Stop stopA3 = new Stop(stationA, line3);
+        stationA.getStops().add(stopA3);
+        line3.getStops().add(stopA3);
+        line3.getStops().add(new Stop(stationS, line3));
+        ModelData localModel = new ModelData(new ArrayList<>(List.of(line3)), new ArrayList<>(List.of(stationA)));
+
+        // Act
+        TraversalNetwork network = TraversalNetwork.compile(localModel);
+        List<Station> compiled = MapTraversal.traverseNetwork(network, stationA,
+                MapTraversal.MapTraversalLimitType.STOP_LIMIT, 1);
+        List<Station> direct = MapTraversal.traverseMap(localModel, stationA,
+                MapTraversal.MapTraversalLimitType.STOP_LIMIT, 1);
+
+        // Assert
+        assertEquals(Set.of(stationA, stationB, stationS), new HashSet<>(compiled));
+        assertEquals(new HashSet<>(direct), new HashSet<>(compiled));
+        assertEquals(9, network.stopCount());
+    }
+
     @Test
     public void testTimeLimitFiveMinutes() {
 
@@ -216,6 +244,279 @@ public class MapTraversalUnitTests {
         assertEquals(expected, new HashSet<>(result));
     }
 
+    @Test
+    public void testTimeLimitWithTransferPenalty() {
+        // Arrange
+        // Z csak a C-nél történő átszállással érhető el
+        Station deadEnd = new Station(6, "Z", new Coordinate(47.497, 19.067), new ArrayList<>());
+
+        List<Stop> line3Stops = new ArrayList<>();
+        Line line3 = new Line(6, "3", "#0000FF", false, line3Stops);
+
+        Stop stopC3 = new Stop(stationC, line3);
+        stationC.getStops().add(stopC3);
+        line3Stops.add(stopC3);
+
+        Stop stopDeadEnd = new Stop(deadEnd, line3);
+        deadEnd.getStops().add(stopDeadEnd);
+        line3Stops.add(stopDeadEnd);
+
+        TraversalNetwork network = TraversalNetwork.compile(new ModelData(
+                new ArrayList<>(List.of(line1, line3)),
+                new ArrayList<>(List.of(stationA, stationB, stationC, stationD, deadEnd))
+        ));
+
+        // Act
+        List<Station> withoutPenalty = MapTraversal.traverseNetwork(network, stationA,
+                MapTraversal.MapTraversalLimitType.TIME_LIMIT, 6);
+        network.setTransferPenalty(stationC, 1.0);
+        List<Station> withPenalty = MapTraversal.traverseNetwork(network, stationA,
+                MapTraversal.MapTraversalLimitType.TIME_LIMIT, 6);
+
+        // Assert
+        assertTrue(withoutPenalty.contains(deadEnd));
+        assertFalse(withPenalty.contains(deadEnd));
+        assertTrue(withPenalty.contains(stationD));
+    }
+
+    @Test
+    public void testTimeLimitFromCoordinate() {
+        // Arrange
+        TraversalNetwork network = TraversalNetwork.compile(model);
+        SpatialIndex index = new SpatialIndex(network, 100);
+        Coordinate origin = new Coordinate(47.4935, 19.0635); // C és D között
+
+        // Act
+        List<Station> walkOnly = MapTraversal.traverseMapFromCoordinate(index, origin, 100, 5.0, 2);
+        List<Station> result = MapTraversal.traverseMapFromCoordinate(index, origin, 100, 5.0, 4);
+        List<Station> outOfReach = MapTraversal.traverseMapFromCoordinate(index, origin, 10, 5.0, 10);
+
+        // Assert - ~0,8 perc gyaloglás + 1 perc, majd B ~1,2 perc menettel
+        assertEquals(Set.of(stationC, stationD), new HashSet<>(walkOnly));
+        assertEquals(Set.of(stationB, stationC, stationD), new HashSet<>(result));
+        assertTrue(outOfReach.isEmpty());
+    }
+
+    @Test
+    public void testReverseTraversalMatchesForwardTraversals() {
+        // Arrange
+        TraversalNetwork network = TraversalNetwork.compile(model);
+        network.setTransferPenalty(stationC, 0.5);
+
+        for (MapTraversal.MapTraversalLimitType limitType : MapTraversal.MapTraversalLimitType.values()) {
+            for (int limit = 0; limit <= 6; limit++) {
+                for (Station dest : model.stations) {
+                    // Act
+                    List<Station> result = MapTraversal.reverseTraverseNetwork(network, dest, limitType, limit);
+
+                    // Assert - pontosan azok, amelyekből előre bejárva elérhető a cél
+                    Set<Station> expected = new HashSet<>();
+                    for (Station src : model.stations) {
+                        if (MapTraversal.traverseNetwork(network, src, limitType, limit).contains(dest)) {
+                            expected.add(src);
+                        }
+                    }
+                    assertEquals(limitType + " " + limit + " " + dest.getName(), expected, new HashSet<>(result));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPathReconstructionWithLineChange() {
+        // Arrange - Z csak a 3-as vonalon, C-nél átszállva érhető el
+        Station deadEnd = new Station(6, "Z", new Coordinate(47.497, 19.067), new ArrayList<>());
+        Line line3 = new Line(6, "3", "#0000FF", false, new ArrayList<>());
+        Stop stopC3 = new Stop(stationC, line3);
+        stationC.getStops().add(stopC3);
+        line3.getStops().add(stopC3);
+        Stop stopDeadEnd = new Stop(deadEnd, line3);
+        deadEnd.getStops().add(stopDeadEnd);
+        line3.getStops().add(stopDeadEnd);
+
+        TraversalNetwork network = TraversalNetwork.compile(new ModelData(
+                new ArrayList<>(List.of(line1, line3)),
+                new ArrayList<>(List.of(stationA, stationB, stationC, stationD, deadEnd))
+        ));
+
+        // Act
+        TraversalResult result = MapTraversal.traverseNetworkWithPaths(network, stationA,
+                MapTraversal.MapTraversalLimitType.TRANSFER_LIMIT, 1);
+        TraversalResult reverse = MapTraversal.reverseTraverseNetworkWithPaths(network, deadEnd,
+                MapTraversal.MapTraversalLimitType.STOP_LIMIT, 5);
+
+        // Assert
+        List<Stop> path = result.getPath(deadEnd);
+        assertEquals(List.of(stationA, stationB, stationC, stationC, deadEnd),
+                path.stream().map(Stop::getStation).collect(Collectors.toList()));
+        assertEquals(line3, path.get(path.size() - 1).getLine());
+        assertEquals(1, result.getLineChangeCount(deadEnd));
+        assertEquals(1.0, result.getLabel(deadEnd), 0.0);
+        assertEquals(List.of(stationA, stationB, stationC, stationC, deadEnd),
+                reverse.getPath(stationA).stream().map(Stop::getStation).collect(Collectors.toList()));
+        assertEquals(3.0, reverse.getLabel(stationA), 0.0);
+    }
+
+    @Test
+    public void testStationOrdersGiveSameResults() {
+        // Arrange - 6x6-os rács soronkénti és oszloponkénti vonalakkal, összekevert betöltési sorrendben
+        int size = 6;
+        Station[][] grid = new Station[size][size];
+        List<Station> stations = new ArrayList<>();
+        List<Line> lines = new ArrayList<>();
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                grid[row][col] = new Station(row * size + col, "S" + row + "_" + col,
+                        new Coordinate(47.49 + row * 0.005, 19.04 + col * 0.005), new ArrayList<>());
+                stations.add(grid[row][col]);
+            }
+        }
+        for (int i = 0; i < 2 * size; i++) {
+            Line line = new Line(i, "L" + i, "#000000", false, new ArrayList<>());
+            for (int j = 0; j < size; j++) {
+                Station station = i < size ? grid[i][j] : grid[j][i - size];
+                Stop stop = new Stop(station, line);
+                station.getStops().add(stop);
+                line.getStops().add(stop);
+            }
+            lines.add(line);
+        }
+        Collections.shuffle(stations, new Random(7));
+        ModelData gridModel = new ModelData(lines, stations);
+
+        TraversalNetwork loadOrder = TraversalNetwork.compile(gridModel);
+        for (TraversalNetwork.StationOrder order : TraversalNetwork.StationOrder.values()) {
+            // Act
+            TraversalNetwork network = TraversalNetwork.compile(gridModel, order);
+
+            // Assert - az átszámozás a kifelé látható eredményeken nem látszik
+            assertEquals(stations.size(), network.stationCount());
+            assertEquals(loadOrder.stopCount(), network.stopCount());
+            for (Station src : stations) {
+                for (MapTraversal.MapTraversalLimitType limitType : MapTraversal.MapTraversalLimitType.values()) {
+                    assertEquals(order + " " + limitType + " " + src.getName(),
+                            new HashSet<>(MapTraversal.traverseNetwork(loadOrder, src, limitType, 3)),
+                            new HashSet<>(MapTraversal.traverseNetwork(network, src, limitType, 3)));
+                }
+                assertEquals(src, network.getStation(network.indexOf(src)));
+            }
+        }
+        assertTrue(TraversalNetwork.compile(gridModel, TraversalNetwork.StationOrder.CUTHILL_MCKEE).averageArcSpan()
+                < loadOrder.averageArcSpan());
+        assertTrue(TraversalNetwork.compile(gridModel, TraversalNetwork.StationOrder.HILBERT).averageArcSpan()
+                < loadOrder.averageArcSpan());
+    }
+
+    @Test
+    public void testCustomMetricCountsZoneBoundaries() {
+        // Arrange - D egy másik tarifazónában van, csak a zónahatár átlépése számít
+        TraversalMetric zones = new TraversalMetric() {
+            @Override
+            public double rideCost(Stop from, Stop to, double minutes) {
+                return (from.getStation() == stationD) != (to.getStation() == stationD) ? 1 : 0;
+            }
+
+            @Override
+            public double transferCost(Station station, double transferPenalty) {
+                return 0;
+            }
+
+            @Override
+            public double walkCost(Station from, Station to, double minutes) {
+                return Double.POSITIVE_INFINITY;
+            }
+
+            @Override
+            public double startLabel() {
+                return 0;
+            }
+        };
+        TraversalNetwork network = TraversalNetwork.compile(model);
+
+        // Act
+        List<Station> sameZone = MapTraversal.traverseNetwork(network, stationA, zones, 0);
+        List<Station> oneBoundary = MapTraversal.traverseNetwork(network, stationA, zones, 1);
+        List<Station> towardsD = MapTraversal.reverseTraverseNetwork(network, stationD, zones, 0);
+
+        // Assert
+        assertEquals(Set.of(stationA, stationB, stationC), new HashSet<>(sameZone));
+        assertEquals(Set.of(stationA, stationB, stationC, stationD), new HashSet<>(oneBoundary));
+        assertEquals(List.of(stationD), towardsD);
+    }
+
+    @Test
+    public void testChangedMetricIsEvaluatedAgain() {
+        // Arrange - lezárható állomás, a lezárás új metrikaverziót ad
+        class ClosableStops implements TraversalMetric {
+            Station closed;
+            int version;
+
+            @Override
+            public double rideCost(Stop from, Stop to, double minutes) {
+                return from.getStation() == closed || to.getStation() == closed ? Double.POSITIVE_INFINITY : 1;
+            }
+
+            @Override
+            public double transferCost(Station station, double transferPenalty) {
+                return 0;
+            }
+
+            @Override
+            public double walkCost(Station from, Station to, double minutes) {
+                return Double.POSITIVE_INFINITY;
+            }
+
+            @Override
+            public double startLabel() {
+                return 0;
+            }
+
+            @Override
+            public int getVersion() {
+                return version;
+            }
+        }
+        ClosableStops metric = new ClosableStops();
+        TraversalNetwork network = TraversalNetwork.compile(model);
+
+        // Act
+        List<Station> open = MapTraversal.traverseNetwork(network, stationA, metric, 3);
+        metric.closed = stationC;
+        metric.version++;
+        List<Station> closed = MapTraversal.traverseNetwork(network, stationA, metric, 3);
+
+        // Assert
+        assertEquals(Set.of(stationA, stationB, stationC, stationD), new HashSet<>(open));
+        assertEquals(Set.of(stationA, stationB), new HashSet<>(closed));
+    }
+
+    @Test
+    public void testConcurrentChangesEachIncrementVersion() throws InterruptedException {
+        // Arrange
+        TraversalNetwork network = TraversalNetwork.compile(model);
+        int start = network.getVersion();
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            Station station = model.stations.get(t);
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    network.setTransferPenalty(station, i % 5);
+                }
+            });
+        }
+
+        // Act
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        // Assert - egyetlen módosítás sem veszhet el a verziószámban
+        assertEquals(start + 4 * 10000, network.getVersion());
+    }
+
     // Új tesztek hozzáadása
 
     @Test(expected = IllegalArgumentException.class)
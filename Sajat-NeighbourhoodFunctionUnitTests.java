@@ -0,0 +1,96 @@
+package org.openmetromaps.maps;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmetromaps.maps.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NeighbourhoodFunctionUnitTests {
+
+    ModelData model;
+
+    /*
+     * 30 x 30-as rács: minden sor és minden oszlop egy vonal.
+     */
+    @Before
+    public void createMap() {
+        int side = 30;
+        List<Station> stations = new ArrayList<>();
+        List<Line> lines = new ArrayList<>();
+        for (int i = 0; i < side * side; i++) {
+            stations.add(new Station(i, "S" + i,
+                    new Coordinate(47.45 + (i / side) * 0.004, 19.00 + (i % side) * 0.006), new ArrayList<>()));
+        }
+        for (int row = 0; row < side; row++) {
+            Line line = new Line(row, "H" + row, "#000000", false, new ArrayList<>());
+            for (int col = 0; col < side; col++) {
+                addStop(stations.get(row * side + col), line);
+            }
+            lines.add(line);
+        }
+        for (int col = 0; col < side; col++) {
+            Line line = new Line(side + col, "V" + col, "#000000", false, new ArrayList<>());
+            for (int row = 0; row < side; row++) {
+                addStop(stations.get(row * side + col), line);
+            }
+            lines.add(line);
+        }
+        model = new ModelData(lines, stations);
+    }
+
+    private void addStop(Station station, Line line) {
+        Stop stop = new Stop(station, line);
+        station.getStops().add(stop);
+        line.getStops().add(stop);
+    }
+
+    @Test
+    public void testEstimatesWithinErrorBound() {
+        NeighbourhoodFunction function = NeighbourhoodFunction.compute(TraversalNetwork.compile(model), 8, 10, 1L);
+
+        double bound = 4 * function.getRelativeStandardError();
+        for (int i = 0; i < model.stations.size(); i += 97) {
+            Station station = model.stations.get(i);
+            for (int k = 0; k <= 8; k++) {
+                int exact = MapTraversal.traverseMap(model, station, MapTraversal.MapTraversalLimitType.STOP_LIMIT, k).size();
+                double estimate = function.getEstimate(station, k);
+                assertTrue(station.getName() + " k=" + k + ": " + estimate + " vs " + exact,
+                        Math.abs(estimate - exact) <= bound * exact);
+            }
+        }
+    }
+
+    @Test
+    public void testNeighbourhoodFunctionIsMonotone() {
+        NeighbourhoodFunction function = NeighbourhoodFunction.compute(TraversalNetwork.compile(model), 70, 6, 3L);
+
+        double[] pairs = function.getNeighbourhoodFunction();
+        assertEquals(71, pairs.length);
+        for (int k = 1; k < pairs.length; k++) {
+            assertTrue(pairs[k] >= pairs[k - 1]);
+        }
+        // Az átmérő (58) után már nem változik
+        assertEquals(pairs[58], pairs[70], 0.0);
+    }
+
+    @Test
+    public void testPackedRegisterMaximum() {
+        Random random = new Random(5);
+        for (int i = 0; i < 1000; i++) {
+            long x = random.nextLong() & 0x7F7F7F7F7F7F7F7FL;
+            long y = random.nextLong() & 0x7F7F7F7F7F7F7F7FL;
+            long expected = 0;
+            for (int lane = 0; lane < 8; lane++) {
+                long a = (x >>> (lane * 8)) & 0xFF;
+                long b = (y >>> (lane * 8)) & 0xFF;
+                expected |= Math.max(a, b) << (lane * 8);
+            }
+            assertEquals(expected, NeighbourhoodFunction.max(x, y));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.openmetromaps.maps;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmetromaps.maps.model.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class NetworkCentralityUnitTests {
+
+    ModelData model;
+
+    Station stationA;
+    Station stationB;
+    Station stationC;
+    Station stationD;
+
+    /*
+     * Line 1: A - B - C - D
+     * Line 2: B - C - D
+     */
+    @Before
+    public void createMap() {
+        stationA = new Station(0, "A", new Coordinate(47.491, 19.061), new ArrayList<>());
+        stationB = new Station(1, "B", new Coordinate(47.492, 19.062), new ArrayList<>());
+        stationC = new Station(2, "C", new Coordinate(47.493, 19.063), new ArrayList<>());
+        stationD = new Station(3, "D", new Coordinate(47.494, 19.064), new ArrayList<>());
+
+        Line line1 = new Line(4, "1", "#FF0000", false, new ArrayList<>());
+        addStop(stationA, line1);
+        addStop(stationB, line1);
+        addStop(stationC, line1);
+        addStop(stationD, line1);
+
+        Line line2 = new Line(5, "2", "#00FF00", false, new ArrayList<>());
+        addStop(stationB, line2);
+        addStop(stationC, line2);
+        addStop(stationD, line2);
+
+        model = new ModelData(new ArrayList<>(List.of(line1, line2)),
+                new ArrayList<>(List.of(stationA, stationB, stationC, stationD)));
+    }
+
+    private void addStop(Station station, Line line) {
+        Stop stop = new Stop(station, line);
+        station.getStops().add(stop);
+        line.getStops().add(stop);
+    }
+
+    @Test
+    public void testCentralityOnLineGraph() {
+        // Arrange - az állomásgráf A - B - C - D út
+        TraversalNetwork network = TraversalNetwork.compile(model);
+
+        // Act
+        NetworkCentrality.Result result = NetworkCentrality.compute(network,
+                MapTraversal.MapTraversalLimitType.STOP_LIMIT, 2);
+
+        // Assert - rendezett párokra számolva
+        assertEquals(0.0, result.getBetweenness(stationA), 1e-9);
+        assertEquals(4.0, result.getBetweenness(stationB), 1e-9);
+        assertEquals(4.0, result.getBetweenness(stationC), 1e-9);
+        assertEquals(0.5, result.getCloseness(stationA), 1e-9);
+        assertEquals(Set.of(stationB, stationC), new HashSet<>(result.mostCentralStations(2)));
+        for (int segment = 0; segment < result.getSegmentCount(); segment++) {
+            if (result.getSegmentFrom(segment) == stationB && result.getSegmentTo(segment) == stationC) {
+                assertEquals(4.0, result.getSegmentBetweenness(segment), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testSampledCentralityWithAllSourcesIsExact() {
+        // Arrange
+        TraversalNetwork network = TraversalNetwork.compile(model);
+
+        // Act
+        NetworkCentrality.Result exact = NetworkCentrality.compute(network,
+                MapTraversal.MapTraversalLimitType.TIME_LIMIT, 1);
+        NetworkCentrality.Result sampled = NetworkCentrality.computeSampled(network,
+                MapTraversal.MapTraversalLimitType.TIME_LIMIT, 4, 7L, 3);
+
+        // Assert
+        for (Station station : model.stations) {
+            assertEquals(exact.getBetweenness(station), sampled.getBetweenness(station), 1e-9);
+            assertEquals(exact.getHarmonicCloseness(station), sampled.getHarmonicCloseness(station), 1e-9);
+        }
+    }
+}
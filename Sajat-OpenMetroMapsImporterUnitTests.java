@@ -0,0 +1,128 @@
+package org.openmetromaps.maps;
+
+import org.junit.Test;
+import org.openmetromaps.maps.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OpenMetroMapsImporterUnitTests {
+
+    // A 2-es vonal a később deklarált D állomásra is hivatkozik, a nézet állomásai nem a modell részei
+    private static final String DOCUMENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<omm-file version=\"1.0.0\">\n"
+            + "  <model>\n"
+            + "    <station name=\"A\" lat=\"47.491\" lon=\"19.061\"/>\n"
+            + "    <station name=\"B\" lat=\"47.492\" lon=\"19.062\"/>\n"
+            + "    <station name=\"C\" lat=\"47.493\" lon=\"19.063\"/>\n"
+            + "    <line name=\"1\" color=\"#FF0000\" circular=\"false\">\n"
+            + "      <stop station=\"A\"/>\n"
+            + "      <stop station=\"B\"/>\n"
+            + "      <stop station=\"C\"/>\n"
+            + "    </line>\n"
+            + "    <line name=\"2\" color=\"#00FF00\" circular=\"true\">\n"
+            + "      <stop station=\"B\"/>\n"
+            + "      <stop station=\"D\"/>\n"
+            + "    </line>\n"
+            + "    <station name=\"D\" lat=\"47.494\" lon=\"19.064\"/>\n"
+            + "  </model>\n"
+            + "  <views>\n"
+            + "    <view name=\"Geographic\">\n"
+            + "      <station name=\"A\" x=\"10\" y=\"20\"/>\n"
+            + "    </view>\n"
+            + "  </views>\n"
+            + "</omm-file>\n";
+
+    // Nézetelemek közvetlenül a gyökér alatt, a modell előtt és után, a modellével azonos nevű állomásokkal
+    private static final String DOCUMENT_WITH_ROOT_VIEWS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<omm-file version=\"1.0.0\">\n"
+            + "  <view name=\"Schematic\">\n"
+            + "    <edges name=\"1\"/>\n"
+            + "    <station name=\"A\" x=\"10\" y=\"20\"/>\n"
+            + "    <station name=\"A\" x=\"15\" y=\"25\"/>\n"
+            + "  </view>\n"
+            + "  <model>\n"
+            + "    <station name=\"A\" lat=\"47.491\" lon=\"19.061\"/>\n"
+            + "    <station name=\"B\" lat=\"47.492\" lon=\"19.062\"/>\n"
+            + "    <line name=\"1\" color=\"#FF0000\" circular=\"false\">\n"
+            + "      <stop station=\"A\"/>\n"
+            + "      <stop station=\"B\"/>\n"
+            + "    </line>\n"
+            + "  </model>\n"
+            + "  <view name=\"Geographic\">\n"
+            + "    <station name=\"B\" x=\"30\" y=\"40\"/>\n"
+            + "  </view>\n"
+            + "</omm-file>\n";
+
+    private static InputStream input(String document) {
+        return new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testImportBuildsModelAndNetwork() throws IOException {
+        // Act
+        OpenMetroMapsImporter.Result result = OpenMetroMapsImporter.read(input(DOCUMENT), 2,
+                TraversalNetwork.StationOrder.LOAD_ORDER);
+
+        // Assert
+        ModelData model = result.getModel();
+        assertEquals(4, model.stations.size());
+        assertEquals(2, model.lines.size());
+        Station stationB = model.stations.get(1);
+        assertEquals("B", stationB.getName());
+        assertEquals(47.492, stationB.getLocation().getLatitude(), 0.0);
+        assertEquals(2, stationB.getStops().size());
+        assertEquals(model.lines.get(0), stationB.getStops().get(0).getLine());
+
+        Line line2 = model.lines.get(1);
+        assertTrue(line2.isCircular());
+        assertEquals(5, line2.getId());
+        assertEquals("D", line2.getStops().get(1).getStation().getName());
+        assertTrue(line2.getStops().get(1).getStation().getStops().contains(line2.getStops().get(1)));
+
+        assertEquals(4, result.getNetwork().stationCount());
+        assertEquals(List.of(model.stations.get(0), stationB, model.stations.get(2), model.stations.get(3)),
+                MapTraversal.traverseNetwork(result.getNetwork(), model.stations.get(0),
+                        MapTraversal.MapTraversalLimitType.TRANSFER_LIMIT, 1));
+
+        OpenMetroMapsImporter.Statistics statistics = result.getStatistics();
+        assertEquals(DOCUMENT.length(), statistics.getBytes());
+        assertEquals(5, statistics.getStopCount());
+        assertTrue(statistics.getMegabytesPerSecond() > 0);
+    }
+
+    @Test
+    public void testImportWithoutNetwork() throws IOException {
+        OpenMetroMapsImporter.Result result = OpenMetroMapsImporter.read(input(DOCUMENT), 1, null);
+
+        assertNull(result.getNetwork());
+        assertEquals(2, result.getModel().lines.size());
+    }
+
+    @Test
+    public void testViewsDirectlyUnderRootAreSkipped() throws IOException {
+        OpenMetroMapsImporter.Result result = OpenMetroMapsImporter.read(input(DOCUMENT_WITH_ROOT_VIEWS), 1, null);
+
+        ModelData model = result.getModel();
+        assertEquals(2, model.stations.size());
+        assertEquals("A", model.stations.get(0).getName());
+        assertEquals(47.491, model.stations.get(0).getLocation().getLatitude(), 0.0);
+        assertEquals(1, model.lines.size());
+        assertEquals(2, model.lines.get(0).getStops().size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownStation() throws IOException {
+        OpenMetroMapsImporter.read(input(DOCUMENT.replace("station=\"D\"", "station=\"E\"")), 1, null);
+    }
+
+    @Test(expected = IOException.class)
+    public void testMalformedDocument() throws IOException {
+        OpenMetroMapsImporter.read(input(DOCUMENT.substring(0, DOCUMENT.length() / 2)), 1, null);
+    }
+}
@@ -0,0 +1,145 @@
+package org.openmetromaps.maps;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmetromaps.maps.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PartitionOverlayUnitTests {
+
+    ModelData model;
+    TraversalNetwork network;
+
+    /*
+     * 24 x 24-es, kissé torzított rács: minden sor és minden oszlop egy vonal.
+     */
+    @Before
+    public void createMap() {
+        int side = 24;
+        Random random = new Random(3);
+        List<Station> stations = new ArrayList<>();
+        List<Line> lines = new ArrayList<>();
+        for (int i = 0; i < side * side; i++) {
+            stations.add(new Station(i, "S" + i, new Coordinate(47.45 + (i / side) * 0.004 + random.nextDouble() * 0.002,
+                    19.00 + (i % side) * 0.006 + random.nextDouble() * 0.002), new ArrayList<>()));
+        }
+        for (int row = 0; row < side; row++) {
+            Line line = new Line(row, "H" + row, "#000000", false, new ArrayList<>());
+            for (int col = 0; col < side; col++) {
+                addStop(stations.get(row * side + col), line);
+            }
+            lines.add(line);
+        }
+        for (int col = 0; col < side; col++) {
+            Line line = new Line(side + col, "V" + col, "#000000", false, new ArrayList<>());
+            for (int row = 0; row < side; row++) {
+                addStop(stations.get(row * side + col), line);
+            }
+            lines.add(line);
+        }
+        model = new ModelData(lines, stations);
+        network = TraversalNetwork.compile(model);
+    }
+
+    private void addStop(Station station, Line line) {
+        Stop stop = new Stop(station, line);
+        station.getStops().add(stop);
+        line.getStops().add(stop);
+    }
+
+    /*
+     * Menetidő ingyenes átszállással, a lezárt szakaszokon nem lehet menni.
+     */
+    private static TraversalMetric ridingTime(List<Station> closed) {
+        return new TraversalMetric() {
+            @Override
+            public double rideCost(Stop from, Stop to, double minutes) {
+                return closed.contains(from.getStation()) || closed.contains(to.getStation())
+                        ? Double.POSITIVE_INFINITY : minutes;
+            }
+
+            @Override
+            public double transferCost(Station station, double transferPenalty) {
+                return 0;
+            }
+
+            @Override
+            public double walkCost(Station from, Station to, double minutes) {
+                return Double.POSITIVE_INFINITY;
+            }
+
+            @Override
+            public double startLabel() {
+                return 0;
+            }
+        };
+    }
+
+    private void assertMatchesTraversal(PartitionOverlay overlay, TraversalMetric metric) {
+        for (int i = 0; i < model.stations.size(); i += 53) {
+            Station source = model.stations.get(i);
+            TraversalResult exact = MapTraversal.traverseNetworkWithPaths(network, source, metric, Integer.MAX_VALUE);
+            for (Station target : model.stations) {
+                assertEquals(source.getName() + " -> " + target.getName(),
+                        exact.getLabel(target), overlay.distance(source, target), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testOverlayDistancesMatchTraversal() {
+        // Arrange
+        TraversalMetric metric = ridingTime(List.of());
+
+        // Act
+        PartitionOverlay overlay = PartitionOverlay.build(network, metric, 10, 3, 2);
+
+        // Assert
+        assertEquals(3, overlay.getLevelCount());
+        assertEquals(64, overlay.getCellCount(1));
+        assertEquals(4, overlay.getCellCount(3));
+        assertTrue(overlay.getBoundaryStationCount(3) < overlay.getBoundaryStationCount(1));
+        assertMatchesTraversal(overlay, metric);
+
+        // A távoli célig a keresés csak a két szélső cellát és az átfedést járja be
+        PartitionOverlay.QueryResult far = overlay.query(0, model.stations.size() - 1);
+        assertTrue(far.settled < model.stations.size() / 2);
+    }
+
+    @Test
+    public void testCustomizeAfterClosures() {
+        // Arrange
+        PartitionOverlay overlay = PartitionOverlay.build(network, ridingTime(List.of()), 10, 3, 2);
+        TraversalMetric disrupted = ridingTime(List.of(model.stations.get(100), model.stations.get(301),
+                model.stations.get(302), model.stations.get(325)));
+
+        // Act
+        overlay.customize(disrupted);
+
+        // Assert
+        assertMatchesTraversal(overlay, disrupted);
+        assertEquals(Double.POSITIVE_INFINITY, overlay.distance(model.stations.get(0), model.stations.get(100)), 0.0);
+    }
+
+    @Test
+    public void testCustomizeSameMetricAfterChange() {
+        // Arrange
+        List<Station> closed = new ArrayList<>();
+        TraversalMetric metric = ridingTime(closed);
+        PartitionOverlay overlay = PartitionOverlay.build(network, metric, 10, 3, 2);
+        assertTrue(overlay.distance(model.stations.get(0), model.stations.get(100)) < Double.POSITIVE_INFINITY);
+
+        // Act
+        closed.addAll(List.of(model.stations.get(100), model.stations.get(301)));
+        overlay.customize(metric);
+
+        // Assert
+        assertEquals(Double.POSITIVE_INFINITY, overlay.distance(model.stations.get(0), model.stations.get(100)), 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, overlay.distance(model.stations.get(0), model.stations.get(301)), 0.0);
+    }
+}
@@ -0,0 +1,90 @@
+package org.openmetromaps.maps;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmetromaps.maps.model.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class QueryLogReplayUnitTests {
+
+    ModelData model;
+    List<QueryLogReplay.Query> queries;
+
+    @Before
+    public void createMap() {
+        model = QueryLogReplay.generateNetwork(12, 10, 5L);
+        queries = QueryLogReplay.generateLog(model, 300, 5L);
+    }
+
+    @Test
+    public void testGeneratedNetworkIsConsistent() {
+        assertEquals(12, model.lines.size());
+        for (Line line : model.lines) {
+            assertTrue(line.getStops().size() >= 2);
+            for (Stop stop : line.getStops()) {
+                assertTrue(stop.getStation().getStops().contains(stop));
+            }
+        }
+        for (int i = 0; i < model.stations.size(); i++) {
+            assertEquals(i, model.stations.get(i).getId());
+        }
+    }
+
+    @Test
+    public void testLogRoundTrip() throws IOException {
+        // Act
+        StringWriter out = new StringWriter();
+        QueryLogReplay.writeLog(queries, out);
+        List<QueryLogReplay.Query> read = QueryLogReplay.readLog(new StringReader(out.toString()), model);
+
+        // Assert
+        assertEquals(queries.size(), read.size());
+        for (int i = 0; i < queries.size(); i++) {
+            assertEquals(queries.get(i).getSource(), read.get(i).getSource());
+            assertEquals(queries.get(i).getLimitType(), read.get(i).getLimitType());
+            assertEquals(queries.get(i).getLimit(), read.get(i).getLimit());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownStationInLog() throws IOException {
+        QueryLogReplay.readLog(new StringReader("0 STOP_LIMIT 2\n99999 TIME_LIMIT 10\n"), model);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidLimitTypeInLog() throws IOException {
+        QueryLogReplay.readLog(new StringReader("0, DISTANCE_LIMIT, 2\n"), model);
+    }
+
+    @Test
+    public void testClosedLoopReport() {
+        // Act
+        QueryLogReplay.Report report = QueryLogReplay.replayClosedLoop(model, TraversalNetwork.compile(model), queries, 2);
+
+        // Assert
+        assertEquals(queries.size(), report.getQueryCount());
+        assertEquals(0, report.getErrorCount());
+        assertTrue(report.getResultStationCount() >= queries.size());
+        assertTrue(report.getThroughput() > 0);
+        assertTrue(report.getLatencyNanos(0.5) <= report.getLatencyNanos(0.99));
+        assertTrue(report.getLatencyNanos(0.99) <= report.getLatencyNanos(0.999));
+        assertTrue(report.getLatencyNanos(0.999) <= report.getLatencyNanos(1.0));
+    }
+
+    @Test
+    public void testOpenLoopKeepsRate() {
+        // Act - 100 lekérdezés 2000/s ütemben legalább ~50 ms
+        QueryLogReplay.Report report = QueryLogReplay.replayOpenLoop(model, null, queries.subList(0, 100), 2000, 2);
+
+        // Assert
+        assertEquals(100, report.getQueryCount());
+        assertTrue(report.getElapsedNanos() >= 49_000_000L);
+        assertEquals(0, report.getErrorCount());
+    }
+}
@@ -0,0 +1,176 @@
+package org.openmetromaps.maps;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmetromaps.maps.model.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SpatialIndexUnitTests {
+
+    ModelData model;
+    TraversalNetwork network;
+
+    @Before
+    public void createMap() {
+        // Véletlenszerű állomások egy ~5 km-es négyzetben, vonalanként 10 megállóval
+        Random random = new Random(42);
+        List<Station> stations = new ArrayList<>();
+        List<Line> lines = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            stations.add(new Station(i, "S" + i,
+                    new Coordinate(47.47 + random.nextDouble() * 0.045, 19.03 + random.nextDouble() * 0.066),
+                    new ArrayList<>()));
+        }
+        for (int l = 0; l < 20; l++) {
+            Line line = new Line(1000 + l, "L" + l, "#000000", false, new ArrayList<>());
+            for (int i = 0; i < 10; i++) {
+                Station station = stations.get(l * 10 + i);
+                Stop stop = new Stop(station, line);
+                station.getStops().add(stop);
+                line.getStops().add(stop);
+            }
+            lines.add(line);
+        }
+        model = new ModelData(lines, stations);
+        network = TraversalNetwork.compile(model);
+    }
+
+    @Test
+    public void testWithinRadiusMatchesFullScan() {
+        SpatialIndex index = new SpatialIndex(network, 250);
+        Coordinate point = new Coordinate(47.49, 19.06);
+
+        Set<Station> expected = new HashSet<>();
+        for (Station station : model.stations) {
+            if (index.distanceMeters(point, station.getLocation()) <= 800) {
+                expected.add(station);
+            }
+        }
+
+        assertEquals(expected, new HashSet<>(index.withinRadius(point, 800)));
+    }
+
+    @Test
+    public void testNearestMatchesFullScan() {
+        SpatialIndex index = new SpatialIndex(network, 250);
+        Coordinate point = new Coordinate(47.40, 19.00); // a hálózaton kívül
+
+        List<Station> expected = new ArrayList<>(model.stations);
+        expected.sort(Comparator.comparingDouble(s -> index.distanceMeters(point, s.getLocation())));
+
+        assertEquals(expected.subList(0, 5), index.nearest(point, 5));
+        assertEquals(model.stations.size(), index.nearest(point, 1000).size());
+    }
+
+    @Test
+    public void testWalkingTransfersConnectSeparateLines() {
+        SpatialIndex index = new SpatialIndex(network, 250);
+        Station src = model.stations.get(0);
+
+        int expectedPairs = 0;
+        for (int i = 0; i < model.stations.size(); i++) {
+            for (int j = i + 1; j < model.stations.size(); j++) {
+                if (index.distanceMeters(model.stations.get(i).getLocation(), model.stations.get(j).getLocation()) <= 300) {
+                    expectedPairs++;
+                }
+            }
+        }
+
+        List<Station> ridingOnly = MapTraversal.traverseNetwork(network, src,
+                MapTraversal.MapTraversalLimitType.TIME_LIMIT, 60);
+        network.setWalkingTransfers(index, 300, 5.0);
+        List<Station> withWalking = MapTraversal.traverseNetwork(network, src,
+                MapTraversal.MapTraversalLimitType.TIME_LIMIT, 60);
+
+        assertEquals(2 * expectedPairs, network.walkingTransferCount());
+        assertTrue(withWalking.containsAll(ridingOnly));
+        assertTrue(withWalking.size() > ridingOnly.size());
+    }
+
+    @Test
+    public void testAsymmetricWalkingCostsInBackwardSearches() {
+        // X és Y külön vonalon van, csak gyalog érhetők el egymásból; X-ből Y-ba olcsó, vissza drága
+        Station stationX = new Station(0, "X", new Coordinate(47.5000, 19.05), new ArrayList<>());
+        Station stationY = new Station(1, "Y", new Coordinate(47.5005, 19.05), new ArrayList<>());
+        Station stationP = new Station(2, "P", new Coordinate(47.5200, 19.05), new ArrayList<>());
+        Station stationQ = new Station(3, "Q", new Coordinate(47.5200, 19.08), new ArrayList<>());
+        List<Line> lines = new ArrayList<>();
+        for (Station[] pair : new Station[][] {{stationX, stationP}, {stationY, stationQ}}) {
+            Line line = new Line(1000 + lines.size(), "L" + lines.size(), "#000000", false, new ArrayList<>());
+            for (Station station : pair) {
+                Stop stop = new Stop(station, line);
+                station.getStops().add(stop);
+                line.getStops().add(stop);
+            }
+            lines.add(line);
+        }
+        TraversalNetwork walkingNetwork = TraversalNetwork.compile(new ModelData(lines,
+                new ArrayList<>(List.of(stationX, stationY, stationP, stationQ))));
+        walkingNetwork.setWalkingTransfers(new SpatialIndex(walkingNetwork, 250), 300, 5.0);
+        TraversalMetric metric = new TraversalMetric() {
+            @Override
+            public double rideCost(Stop from, Stop to, double minutes) {
+                return 10;
+            }
+
+            @Override
+            public double transferCost(Station station, double transferPenalty) {
+                return 0;
+            }
+
+            @Override
+            public double walkCost(Station from, Station to, double minutes) {
+                return from == stationX ? 1 : 100;
+            }
+
+            @Override
+            public double startLabel() {
+                return 0;
+            }
+        };
+
+        assertEquals(List.of(stationX, stationY), MapTraversal.traverseNetwork(walkingNetwork, stationX, metric, 5));
+        assertEquals(Set.of(stationX, stationY),
+                new HashSet<>(MapTraversal.reverseTraverseNetwork(walkingNetwork, stationY, metric, 5)));
+        assertEquals(List.of(stationX), MapTraversal.reverseTraverseNetwork(walkingNetwork, stationX, metric, 5));
+
+        CatchmentPartition towardsY = CatchmentPartition.compute(walkingNetwork, List.of(stationY), metric, 5, true);
+        assertEquals(stationY, towardsY.getFacility(stationX));
+        assertEquals(1.0, towardsY.getDistance(stationX), 0.0);
+        CatchmentPartition fromY = CatchmentPartition.compute(walkingNetwork, List.of(stationY), metric, 5, false);
+        assertNull(fromY.getFacility(stationX));
+    }
+
+    @Test
+    public void testWalkingTransfersReplacedDuringTraversals() throws InterruptedException {
+        SpatialIndex index = new SpatialIndex(network, 250);
+        Station src = model.stations.get(0);
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+
+        // Egy szál felváltva más sugárral cseréli a gyalogos átszállásokat, közben bejárások futnak
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 200; i++) {
+                    network.setWalkingTransfers(index, i % 2 == 0 ? 300 : 600, 5.0);
+                }
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            try {
+                MapTraversal.traverseNetwork(network, src, MapTraversal.MapTraversalLimitType.TIME_LIMIT, 60);
+            } catch (Throwable e) {
+                failures.add(e);
+                break;
+            }
+        }
+        writer.join();
+
+        assertEquals(Collections.emptyList(), failures);
+    }
+}
@@ -0,0 +1,128 @@
+package org.openmetromaps.maps;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmetromaps.maps.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class TraversalCoalescerUnitTests {
+
+    ModelData model;
+    Station stationA;
+    Station stationB;
+    Station stationC;
+
+    @Before
+    public void createMap() {
+        stationA = new Station(0, "A", new Coordinate(47.491, 19.061), new ArrayList<>());
+        stationB = new Station(1, "B", new Coordinate(47.492, 19.062), new ArrayList<>());
+        stationC = new Station(2, "C", new Coordinate(47.493, 19.063), new ArrayList<>());
+        Line line = new Line(3, "1", "#FF0000", false, new ArrayList<>());
+        for (Station station : List.of(stationA, stationB, stationC)) {
+            Stop stop = new Stop(station, line);
+            station.getStops().add(stop);
+            line.getStops().add(stop);
+        }
+        model = new ModelData(new ArrayList<>(List.of(line)), new ArrayList<>(List.of(stationA, stationB, stationC)));
+    }
+
+    /*
+     * Megállószámláló metrika, amelynek első kiértékelése a kapu megnyitásáig vár.
+     */
+    private static TraversalMetric gatedStopMetric(CountDownLatch gate) {
+        return new TraversalMetric() {
+            @Override
+            public double rideCost(Stop from, Stop to, double minutes) {
+                return 1;
+            }
+
+            @Override
+            public double transferCost(Station station, double transferPenalty) {
+                return 0;
+            }
+
+            @Override
+            public double walkCost(Station from, Station to, double minutes) {
+                return Double.POSITIVE_INFINITY;
+            }
+
+            @Override
+            public double startLabel() {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 0;
+            }
+        };
+    }
+
+    @Test
+    public void testConcurrentIdenticalRequestsShareOneTraversal() throws Exception {
+        // Arrange
+        TraversalCoalescer coalescer = new TraversalCoalescer(TraversalNetwork.compile(model));
+        CountDownLatch gate = new CountDownLatch(1);
+        TraversalMetric metric = gatedStopMetric(gate);
+        int clients = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+
+        try {
+            // Act - minden kérés beérkezik, mielőtt az első bejárás befejeződhetne
+            List<Future<List<Station>>> results = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                results.add(executor.submit(() -> coalescer.traverse(stationA, metric, 1)));
+            }
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (coalescer.getRequestCount() < clients && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            gate.countDown();
+
+            // Assert
+            List<Station> first = results.get(0).get(10, TimeUnit.SECONDS);
+            assertEquals(List.of(stationA, stationB), first);
+            for (Future<List<Station>> result : results) {
+                assertTrue(first == result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(clients, coalescer.getRequestCount());
+            assertEquals(1, coalescer.getExecutionCount());
+            assertEquals(clients - 1, coalescer.getCoalescedCount());
+            assertEquals((clients - 1) / (double) clients, coalescer.getCoalescingRatio(), 1e-12);
+            assertEquals(0, coalescer.getInFlightCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSequentialAndChangedNetworkRequestsRunAgain() {
+        // Arrange
+        TraversalNetwork network = TraversalNetwork.compile(model);
+        TraversalCoalescer coalescer = new TraversalCoalescer(network);
+
+        // Act
+        List<Station> before = coalescer.traverse(stationA, MapTraversal.MapTraversalLimitType.TIME_LIMIT, 10);
+        network.setDefaultTransferPenalty(2.0);
+        List<Station> after = coalescer.traverse(stationA, MapTraversal.MapTraversalLimitType.TIME_LIMIT, 10);
+
+        // Assert - befejezett számítást nem őriz meg
+        assertEquals(before, after);
+        assertEquals(2, coalescer.getExecutionCount());
+        assertEquals(0, coalescer.getCoalescedCount());
+        assertEquals(0.0, coalescer.getCoalescingRatio(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFailureReachesCaller() {
+        TraversalCoalescer coalescer = new TraversalCoalescer(TraversalNetwork.compile(model));
+        Station foreign = new Station(9, "X", new Coordinate(47.5, 19.1), new ArrayList<>());
+
+        coalescer.traverse(foreign, MapTraversal.MapTraversalLimitType.STOP_LIMIT, 1);
+    }
+}